@@ -0,0 +1,186 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+// Renders a catalogue sheet (the same page that "Print Entry" prints) for every treasure in the data file, or every treasure in a category
+// and/or country, to a PNG file per treasure. No display is needed, so this can be run on a server -
+//
+//      java -Djava.awt.headless=true CatalogueExporter [--category <category>] [--country <country>] [--threads <n>] <data file> <output directory>
+//
+// The sheets are rendered in parallel (one thread per core by default), and images go through the same thumbnail cache as the UI so that
+// only a bounded number of them are ever in memory. The catalogue itself is loaded into a ColumnStore rather than a DataStore, since none of
+// DataStore's indexes are needed here, and a Treasure is only made for each sheet as it is rendered, so even a catalogue of millions of
+// treasures fits in a small heap.
+class CatalogueExporter {
+
+    // Size of a sheet, enough for the three lines of text and a 400x400 image below them
+    public static final int SHEET_WIDTH = 420;
+    public static final int SHEET_HEIGHT = 500;
+
+    // Prints -
+    //      Name
+    //      Category
+    //      Image Path
+    //      Image
+    public static void drawSheet(Graphics graphics, Treasure t, Image image) {
+
+        int xLocation = 10;
+        int yLocation = 20;
+        graphics.drawString("Name: " + t.name(), xLocation, yLocation);
+
+        yLocation += 20;
+        graphics.drawString("Category: " + t.category(), xLocation, yLocation);
+
+        yLocation += 20;
+        graphics.drawString("Image Path: " + t.image_path(), xLocation, yLocation);
+
+        // The thumbnail is already scaled to fit in 400x400, so draw it at its own size
+        yLocation += 30;
+        if (image != null) {
+            graphics.drawImage(image, xLocation, yLocation, null);
+        }
+
+    }
+
+    public static void main(String[] args) {
+
+        String category = null;
+        String country = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        ArrayList<String> files = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--category")) {
+                    category = args[++i];
+                } else if (args[i].equals("--country")) {
+                    country = args[++i];
+                } else if (args[i].equals("--threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else {
+                    files.add(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            files.clear();
+        }
+
+        if (files.size() != 2 || threads < 1) {
+            System.err.println("Usage: java -Djava.awt.headless=true CatalogueExporter [--category <category>] [--country <country>] [--threads <n>] <data file> <output directory>");
+            System.exit(1);
+        }
+
+        ColumnStore store = read(files.get(0));
+
+        File output_directory = new File(files.get(1));
+        output_directory.mkdirs();
+
+        int[] rows = store.filter(category, country);
+        ImageCache images = new ImageCache(new Thumbnails(".thumbnails", 400), 64L * 1024 * 1024, threads);
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<?>> sheets = new ArrayList<>();
+        for (int row : rows) {
+            sheets.add(workers.submit(() -> {
+                Treasure treasure = store.get(row);
+                exportSheet(treasure, images.get(treasure.image_path()), output_directory);
+                return null;
+            }));
+        }
+        workers.shutdown();
+
+        int failed = 0;
+        for (Future<?> sheet : sheets) {
+            try {
+                sheet.get();
+            } catch (ExecutionException e) {
+                System.err.println(e.getCause());
+                failed++;
+            } catch (InterruptedException e) {
+                System.exit(2);
+            }
+        }
+
+        System.out.println("Exported " + (rows.length - failed) + " of " + rows.length + " sheets to " + output_directory);
+        if (failed > 0) {
+            System.exit(2);
+        }
+
+    }
+
+    // Load the data file (and its journal), stopping if any of its rows are bad, as the application does
+    private static ColumnStore read(String filename) {
+
+        try {
+
+            Validator validator = new Validator();
+            ColumnStore store = ColumnStore.read(filename, validator);
+
+            if (validator.hasProblems()) {
+                validator.report(filename, System.err);
+            }
+            if (validator.hasErrors()) {
+                System.exit(1);
+            }
+
+            return store;
+
+        } catch (IOException e) {
+
+            System.err.println(e);
+            System.exit(2);
+            return null;
+
+        }
+
+    }
+
+    // Render one sheet and write it out as <catalogue number>.png (see fileName)
+    private static void exportSheet(Treasure treasure, Image image, File output_directory) throws IOException {
+
+        BufferedImage sheet = new BufferedImage(SHEET_WIDTH, SHEET_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = sheet.createGraphics();
+
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, SHEET_WIDTH, SHEET_HEIGHT);
+        graphics.setColor(Color.BLACK);
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+        drawSheet(graphics, treasure, image);
+        graphics.dispose();
+
+        ImageIO.write(sheet, "png", new File(output_directory, fileName(treasure.catalogue_number())));
+
+    }
+
+    // The file name for a catalogue number's sheet. Digits and lower case letters are kept as they are, and any other character is written
+    // as _<its code in hex>_, e.g. A/1 becomes _41__2f_1.png. That way two different catalogue numbers never get the same file name (and so
+    // never overwrite each other's sheets), even on a file system that ignores case, and a usual catalogue number like 1234 is just
+    // 1234.png.
+    static String fileName(String catalogue_number) {
+
+        StringBuilder name = new StringBuilder();
+        catalogue_number.codePoints().forEach(c -> {
+            if ((c >= '0' && c <= '9') || (c >= 'a' && c <= 'z')) {
+                name.appendCodePoint(c);
+            } else {
+                name.append('_').append(Integer.toHexString(c)).append('_');
+            }
+        });
+        return name.append(".png").toString();
+
+    }
+
+}
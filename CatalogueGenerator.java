@@ -0,0 +1,224 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+// Writes made up catalogues, for measuring how the application copes with much more data than the real catalogue has. The same options
+// and seed always give exactly the same catalogue, so performance runs can be repeated.
+//
+//      java CatalogueGenerator [options] <rows> <output file>
+//
+//      --seed <n>              seed for the random numbers (default 42)
+//      --categories <n>        how many different categories to use (default 30)
+//      --countries <n>         how many different countries to use (default 50)
+//      --skew <s>              Zipf exponent for how often each category and country is used; 0 means they are all equally likely, and
+//                              around 1 means a few are very common and most are rare, like real collections (default 0)
+//      --name-words <n>        how many words in each name (default 2)
+//      --images <n>            how many different image paths to use; treasures share them when there are fewer than rows (default 25)
+//      --format <format>       text (the data format, see DataStore), snapshot (see Snapshot), or journal (a journal adding every
+//                              treasure, see DataStore) (default text)
+//
+// Catalogue numbers are unique and go up through the file.
+class CatalogueGenerator {
+
+    private static final String[] CATEGORIES = {
+        "Furniture", "Vehicle", "Technology", "Tools", "Clothing", "Ceramics", "Jewellery", "Weapons", "Textiles", "Coins",
+        "Paintings", "Sculpture", "Manuscripts", "Maps", "Instruments", "Toys", "Glassware", "Clocks", "Photographs", "Medals",
+        "Fossils", "Minerals", "Armour", "Pottery", "Lamps", "Kitchenware", "Stamps", "Posters", "Scientific Apparatus", "Religious Objects"
+    };
+
+    private static final String[] COUNTRIES = {
+        "England", "Scotland", "Wales", "Ireland", "France", "Germany", "Italy", "Spain", "Portugal", "Netherlands",
+        "Belgium", "Denmark", "Sweden", "Norway", "Finland", "Poland", "Austria", "Switzerland", "Greece", "Turkey",
+        "Egypt", "Morocco", "Nigeria", "Kenya", "South Africa", "India", "Pakistan", "China", "Japan", "Korea",
+        "Thailand", "Vietnam", "Indonesia", "Australia", "New Zealand", "America", "Canada", "Mexico", "Brazil", "Argentina",
+        "Peru", "Chile", "Russia", "Iran", "Iraq", "Israel", "Saudi Arabia", "Ethiopia", "Ghana", "Sri Lanka"
+    };
+
+    private static final String[] ADJECTIVES = {
+        "Antique", "Brass", "Carved", "Ceremonial", "Copper", "Decorated", "Early", "Gilded", "Hand-painted", "Iron",
+        "Ivory", "Lacquered", "Late", "Miniature", "Oak", "Painted", "Porcelain", "Silver", "Small", "Wooden"
+    };
+
+    private static final String[] NOUNS = {
+        "Balance", "Bowl", "Box", "Chair", "Clock", "Compass", "Cup", "Figure", "Globe", "Jar",
+        "Lamp", "Lock", "Mirror", "Plaque", "Plate", "Radio", "Ring", "Telephone", "Tops", "Tractor",
+        "Trophy", "Truck", "Vase", "Watch", "Whistle"
+    };
+
+    private long seed = 42;
+    private int categories = 30;
+    private int countries = 50;
+    private double skew = 0;
+    private int name_words = 2;
+    private int images = NOUNS.length;
+
+    public static void main(String[] args) {
+
+        CatalogueGenerator generator = new CatalogueGenerator();
+        String format = "text";
+        ArrayList<String> positional = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--seed" -> generator.seed = Long.parseLong(args[++i]);
+                    case "--categories" -> generator.categories = Integer.parseInt(args[++i]);
+                    case "--countries" -> generator.countries = Integer.parseInt(args[++i]);
+                    case "--skew" -> generator.skew = Double.parseDouble(args[++i]);
+                    case "--name-words" -> generator.name_words = Integer.parseInt(args[++i]);
+                    case "--images" -> generator.images = Integer.parseInt(args[++i]);
+                    case "--format" -> format = args[++i];
+                    default -> positional.add(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            positional.clear();
+        }
+
+        boolean valid = positional.size() == 2
+                && Arrays.asList("text", "snapshot", "journal").contains(format)
+                && generator.categories > 0 && generator.countries > 0 && generator.name_words > 0 && generator.images > 0
+                && generator.skew >= 0;
+
+        if (!valid) {
+            System.err.println("Usage: java CatalogueGenerator [--seed <n>] [--categories <n>] [--countries <n>] [--skew <s>] [--name-words <n>]");
+            System.err.println("                               [--images <n>] [--format text|snapshot|journal] <rows> <output file>");
+            System.exit(1);
+        }
+
+        try {
+            generator.write(Integer.parseInt(positional.get(0)), positional.get(1), format);
+        } catch (NumberFormatException e) {
+            System.err.println("The number of rows must be a number");
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println(e);
+            System.exit(2);
+        }
+
+    }
+
+    // Write a catalogue of the given number of treasures to the given file in the data format, with the given skew (see --skew) and the
+    // default options otherwise
+    public static void generate(String filename, int rows, long seed, double skew) throws IOException {
+
+        CatalogueGenerator generator = new CatalogueGenerator();
+        generator.seed = seed;
+        generator.skew = skew;
+        generator.write(rows, filename, "text");
+
+    }
+
+    // Write a catalogue of the given number of treasures to the given file in the given format
+    public void write(int rows, String filename, String format) throws IOException {
+
+        Random random = new Random(seed);
+        Zipf category_distribution = new Zipf(categories, skew);
+        Zipf country_distribution = new Zipf(countries, skew);
+
+        // Catalogue numbers go up by a random step so that they are unique but not just 1, 2, 3, ...
+        long catalogue_number = 0;
+
+        // The snapshot is written all at once, so it needs every treasure in memory; the other formats are written as they are made
+        ArrayList<Treasure> treasures = new ArrayList<>();
+
+        try (BufferedWriter output = format.equals("snapshot") ? null : Files.newBufferedWriter(Paths.get(filename), StandardCharsets.UTF_8)) {
+
+            StringBuilder line = new StringBuilder();
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < rows; i++) {
+
+                catalogue_number += 1 + random.nextInt(10);
+
+                // A name is some adjectives followed by a noun, e.g. "Carved Wooden Box"
+                name.setLength(0);
+                for (int word = 1; word < name_words; word++) {
+                    name.append(ADJECTIVES[random.nextInt(ADJECTIVES.length)]).append(' ');
+                }
+                name.append(NOUNS[random.nextInt(NOUNS.length)]);
+
+                Treasure treasure = new Treasure(
+                        name.toString(),
+                        Long.toString(catalogue_number),
+                        pick(CATEGORIES, category_distribution.sample(random)),
+                        imagePath(random.nextInt(images)),
+                        pick(COUNTRIES, country_distribution.sample(random)));
+
+                if (output == null) {
+                    treasures.add(treasure);
+                    continue;
+                }
+
+                line.setLength(0);
+                if (format.equals("journal")) {
+                    line.append("+\t");
+                }
+                DataStore.appendRecord(line, treasure).append('\n');
+                output.append(line);
+
+            }
+
+        }
+
+        if (format.equals("snapshot")) {
+            Snapshot.write(treasures, filename);
+        }
+
+    }
+
+    // Returns the i'th of the given names, making up more names once the real ones run out (e.g. "Furniture 2", "Vehicle 2")
+    private static String pick(String[] names, int i) {
+
+        if (i < names.length) {
+            return names[i];
+        }
+
+        return names[i % names.length] + " " + (i / names.length + 1);
+
+    }
+
+    // Image paths are named after the nouns, like the real images, e.g. images/lock.jpg, images/lock2.jpg
+    private static String imagePath(int i) {
+
+        String noun = NOUNS[i % NOUNS.length].toLowerCase();
+        return "images/" + noun + ((i < NOUNS.length) ? "" : Integer.toString(i / NOUNS.length + 1)) + ".jpg";
+
+    }
+
+    // Picks numbers from 0 to n - 1, where the chance of picking k is proportional to 1 / (k + 1)^exponent
+    private static class Zipf {
+
+        // cumulative[k] is the chance of picking a number no bigger than k
+        private double[] cumulative;
+
+        public Zipf(int n, double exponent) {
+
+            cumulative = new double[n];
+
+            double total = 0;
+            for (int k = 0; k < n; k++) {
+                total += 1 / Math.pow(k + 1, exponent);
+                cumulative[k] = total;
+            }
+            for (int k = 0; k < n; k++) {
+                cumulative[k] /= total;
+            }
+
+        }
+
+        public int sample(Random random) {
+
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            index = (index >= 0) ? index : -(index + 1);
+            return Math.min(index, cumulative.length - 1);
+
+        }
+
+    }
+
+}
@@ -0,0 +1,401 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// A compact, read-mostly copy of a catalogue, kept column by column rather than as a Treasure per row, for holding millions of treasures in
+// a small heap. CatalogueExporter loads the catalogue into one of these, since it only ever goes through the treasures once and doesn't
+// need DataStore's indexes or undo history.
+//
+// A Treasure is a record of five Strings, and kept in DataStore's map and indexes each one takes several hundred bytes. Here a treasure is
+// just a row id, and each field is a column of primitives -
+//      catalogue number    long[], the number itself (see NumberIndex.key). The few that aren't just a number (e.g. 0288, or not a
+//                          number at all) are kept as strings on the side.
+//      category            int[], the category's code in Treasure.categories
+//      country             int[], the country's code in Treasure.countries
+//      name                the UTF-8 bytes of every name one after another in a byte[], and where each one starts in an int[]
+//      image path          the same as names
+// That is 24 bytes a row plus the bytes of the name and image path, and no objects per row at all, so ten million treasures take a few
+// hundred MB rather than several GB. The fields of a row can be read one at a time without making anything but the String asked for, and a
+// whole Treasure is only made (see get) when it is asked for. Comparing categories and countries is just comparing ints.
+//
+// Rows are only ever added at the end, and removing one just marks it as removed, so a row keeps its id for as long as the store exists.
+// This is meant for data that is loaded once and then mostly read; the space of removed rows isn't reused. Loading gives the same
+// treasures as DataStore.readData does: later rows replace earlier ones with the same catalogue number, and the journal of unsaved changes
+// is replayed on top.
+class ColumnStore implements Iterable<Treasure> {
+
+    private static final int INITIAL_ROWS = 1024;
+
+    private int rows = 0;
+    private BitSet removed = new BitSet();
+    private int removed_count = 0;
+
+    private long[] numbers = new long[INITIAL_ROWS];
+    private int[] categories = new int[INITIAL_ROWS];
+    private int[] countries = new int[INITIAL_ROWS];
+
+    // Catalogue numbers that numbers[row] doesn't give back exactly, by row
+    private HashMap<Integer, String> odd_numbers = new HashMap<>();
+
+    private Text names = new Text();
+    private Text image_paths = new Text();
+
+    // A column of strings, stored as their UTF-8 bytes one after another
+    private static final class Text {
+
+        byte[] bytes = new byte[INITIAL_ROWS * 16];
+        int length = 0;
+
+        // Where each row's string starts in bytes; the row's string ends where the next row's starts
+        int[] starts = new int[INITIAL_ROWS + 1];
+
+        void add(int row, String value) {
+
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            if (length + encoded.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + encoded.length, bytes.length * 2));
+            }
+            if (row + 2 > starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+
+            System.arraycopy(encoded, 0, bytes, length, encoded.length);
+            length += encoded.length;
+            starts[row + 1] = length;
+
+        }
+
+        String get(int row) {
+
+            return new String(bytes, starts[row], starts[row + 1] - starts[row], StandardCharsets.UTF_8);
+
+        }
+
+    }
+
+    // Read a data file and its journal (see DataStore for the formats). Bad rows are reported to the validator and skipped, as
+    // TreasureParser does.
+    public static ColumnStore read(String filename, Validator validator) throws IOException {
+
+        ColumnStore store = new ColumnStore();
+        new TreasureParser(filename).parse(validator, store::add);
+
+        long duplicates = store.removeDuplicates();
+        if (duplicates > 0) {
+            System.err.println("WARNING: " + duplicates + " treasures in " + filename + " have the same catalogue number as an earlier one, and replace it");
+        }
+
+        store.replayJournal(filename + ".journal");
+        return store;
+
+    }
+
+    // Remove every row that a later row has the same catalogue number as, and return how many were removed. Duplicates are rare, so the
+    // numbers are sorted to find out which ones are repeated, and only the rows with those numbers are looked at any closer.
+    private long removeDuplicates() {
+
+        long[] sorted = Arrays.copyOf(numbers, rows);
+        Arrays.sort(sorted);
+
+        HashSet<Long> repeated = new HashSet<>();
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] == sorted[i - 1]) {
+                repeated.add(sorted[i]);
+            }
+        }
+        if (repeated.isEmpty()) {
+            return 0;
+        }
+
+        // Rows with the same number can still have different catalogue numbers (e.g. 0288 and 288), so compare the strings
+        long removed_before = removed_count;
+        HashMap<String, Integer> last = new HashMap<>();
+        for (int row = 0; row < rows; row++) {
+            if (repeated.contains(numbers[row]) && !removed.get(row)) {
+                Integer earlier = last.put(catalogueNumber(row), row);
+                if (earlier != null) {
+                    remove(earlier);
+                }
+            }
+        }
+        return removed_count - removed_before;
+
+    }
+
+    // Apply the changes saved in the journal (if there is one), as DataStore.replayJournal does
+    private void replayJournal(String journal_filename) throws IOException {
+
+        if (!Files.exists(Paths.get(journal_filename))) {
+            return;
+        }
+
+        String contents = new String(Files.readAllBytes(Paths.get(journal_filename)), StandardCharsets.UTF_8);
+
+        // Ignore a last line that was only half written
+        int end = contents.lastIndexOf('\n') + 1;
+
+        ArrayList<String[]> changes = new ArrayList<>();
+        for (String change : contents.substring(0, end).split("\n")) {
+
+            if (change.isEmpty()) {
+                continue;
+            }
+
+            String[] fields = change.split("\t");
+            if (fields.length != 6) {
+                System.err.println("WARNING: Ignoring malformed change in " + journal_filename + ": " + change);
+                continue;
+            }
+            changes.add(fields);
+
+        }
+
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        // find() would look through every row for each change, so find the rows of every number the journal mentions in one go
+        HashSet<String> mentioned = new HashSet<>();
+        for (String[] fields : changes) {
+            mentioned.add(fields[1]);
+        }
+        HashMap<String, Integer> rows_numbered = new HashMap<>();
+        for (int row = 0; row < rows; row++) {
+            if (!removed.get(row)) {
+                String catalogue_number = catalogueNumber(row);
+                if (mentioned.contains(catalogue_number)) {
+                    rows_numbered.put(catalogue_number, row);
+                }
+            }
+        }
+
+        for (String[] fields : changes) {
+
+            Treasure t = new Treasure(fields[2], fields[1], fields[4], fields[3], fields[5]);
+            Integer row = rows_numbered.get(t.catalogue_number());
+
+            if (fields[0].equals("+")) {
+                // Replaces any treasure with the same number
+                if (row != null) {
+                    remove(row);
+                }
+                rows_numbered.put(t.catalogue_number(), add(t));
+            } else if ((row != null) && get(row).equals(t)) {
+                remove(row);
+                rows_numbered.remove(t.catalogue_number());
+            }
+
+        }
+
+    }
+
+    // Add a treasure as a new row at the end, and return its row id. Nothing checks that its catalogue number isn't already used.
+    public int add(Treasure t) {
+
+        int row = rows;
+        if (row == numbers.length) {
+            int grown = row * 2;
+            numbers = Arrays.copyOf(numbers, grown);
+            categories = Arrays.copyOf(categories, grown);
+            countries = Arrays.copyOf(countries, grown);
+        }
+
+        long number = NumberIndex.key(t.catalogue_number());
+        numbers[row] = number;
+        if ((number == NumberIndex.NOT_A_NUMBER) || !Long.toString(number).equals(t.catalogue_number())) {
+            odd_numbers.put(row, t.catalogue_number());
+        }
+
+        categories[row] = Treasure.categories.code(t.category());
+        countries[row] = Treasure.countries.code(t.country());
+        names.add(row, t.name());
+        image_paths.add(row, t.image_path());
+
+        rows++;
+        return row;
+
+    }
+
+    // Remove the row with the given id. Its id is never given to another row.
+    public void remove(int row) {
+
+        if (contains(row)) {
+            removed.set(row);
+            removed_count++;
+        }
+
+    }
+
+    // Whether there is a row with the given id that hasn't been removed
+    public boolean contains(int row) {
+
+        return (row >= 0) && (row < rows) && !removed.get(row);
+
+    }
+
+    // How many rows there are, not counting removed ones
+    public int size() {
+
+        return rows - removed_count;
+
+    }
+
+    // The id the next row added will get; every row id is less than this
+    public int rowLimit() {
+
+        return rows;
+
+    }
+
+    // Make a Treasure out of a row. Every call makes a new one, so hold on to it rather than calling this again if it's needed twice.
+    public Treasure get(int row) {
+
+        check(row);
+        return new Treasure(names.get(row), catalogueNumber(row), category(row), image_paths.get(row), country(row));
+
+    }
+
+    public String name(int row) {
+
+        check(row);
+        return names.get(row);
+
+    }
+
+    public String catalogueNumber(int row) {
+
+        check(row);
+        String odd = odd_numbers.get(row);
+        return (odd != null) ? odd : Long.toString(numbers[row]);
+
+    }
+
+    // The row's catalogue number as a number, or NumberIndex.NOT_A_NUMBER if it isn't one
+    public long number(int row) {
+
+        check(row);
+        return numbers[row];
+
+    }
+
+    // Categories and countries come from the same pools as Treasure's, so these can be compared with ==
+    public String category(int row) {
+
+        check(row);
+        return Treasure.categories.get(categories[row]);
+
+    }
+
+    public String country(int row) {
+
+        check(row);
+        return Treasure.countries.get(countries[row]);
+
+    }
+
+    public String imagePath(int row) {
+
+        check(row);
+        return image_paths.get(row);
+
+    }
+
+    // Returns the id of the row with the given catalogue number, or -1 if there isn't one. This looks through the whole column, but it is
+    // a column of longs, so it takes milliseconds even for millions of rows.
+    public int find(String catalogue_number) {
+
+        long number = NumberIndex.key(catalogue_number);
+        if ((number != NumberIndex.NOT_A_NUMBER) && Long.toString(number).equals(catalogue_number)) {
+            for (int row = 0; row < rows; row++) {
+                if ((numbers[row] == number) && !removed.get(row) && !odd_numbers.containsKey(row)) {
+                    return row;
+                }
+            }
+            return -1;
+        }
+
+        for (Map.Entry<Integer, String> odd : odd_numbers.entrySet()) {
+            if (odd.getValue().equals(catalogue_number) && !removed.get(odd.getKey())) {
+                return odd.getKey();
+            }
+        }
+        return -1;
+
+    }
+
+    // Returns the ids of the rows in the given category and country, in order of id. Either may be null, meaning any category or any
+    // country. Only the two int columns are looked at, never the rows' strings.
+    public int[] filter(String category, String country) {
+
+        // Look the codes up without adding them to the pools, since they may not be any treasure's (and then nothing matches)
+        int wanted_category = (category == null) ? -1 : Treasure.categories.find(category);
+        int wanted_country = (country == null) ? -1 : Treasure.countries.find(country);
+        if (((category != null) && (wanted_category == -1)) || ((country != null) && (wanted_country == -1))) {
+            return new int[0];
+        }
+
+        int[] matches = new int[16];
+        int count = 0;
+        for (int row = 0; row < rows; row++) {
+            if (((wanted_category == -1) || (categories[row] == wanted_category))
+                    && ((wanted_country == -1) || (countries[row] == wanted_country))
+                    && !removed.get(row)) {
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, count * 2);
+                }
+                matches[count++] = row;
+            }
+        }
+
+        return Arrays.copyOf(matches, count);
+
+    }
+
+    // Walks every row that hasn't been removed, in order of id, making a Treasure for each as it goes
+    @Override
+    public Iterator<Treasure> iterator() {
+
+        return new Iterator<>() {
+
+            private int row = removed.nextClearBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return row < rows;
+            }
+
+            @Override
+            public Treasure next() {
+
+                if (row >= rows) {
+                    throw new NoSuchElementException();
+                }
+
+                Treasure t = get(row);
+                row = removed.nextClearBit(row + 1);
+                return t;
+
+            }
+
+        };
+
+    }
+
+    private void check(int row) {
+
+        if (!contains(row)) {
+            throw new NoSuchElementException("No row " + row);
+        }
+
+    }
+
+}
@@ -1,10 +1,34 @@
 import java.io.*;
-import java.util.EmptyStackException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Stack;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 record Treasure(String name, String catalogue_number, String category, String image_path, String country) {
 
+    // There are only a handful of different categories and countries, so every treasure with the same category (or country) shares one
+    // String for it, however the treasure was made (loaded from a file, or typed into the UI)
+    static final StringPool categories = new StringPool();
+    static final StringPool countries = new StringPool();
+
+    Treasure {
+        category = categories.intern(category);
+        country = countries.intern(country);
+    }
+
     @Override
     public String toString() {
         return "(" + catalogue_number + ") " + name;
@@ -12,21 +36,125 @@ record Treasure(String name, String catalogue_number, String category, String im
 
 }
 
+// Thrown when a treasure would be given the same catalogue number as another one
+class DuplicateNumberException extends Exception {
+
+    public DuplicateNumberException(String catalogue_number) {
+        super("A treasure with catalogue number " + catalogue_number + " already exists");
+    }
+
+}
+
 // The data format is -
 // Catalogue Number <TAB> Name <TAB> Image Path <TAB> Category <TAB> Country
 //
 // The data file must have each entry on a separate line following the format above exactly
-// None of the fields may be empty - If it is, the application quits 1 as the return code
+// None of the fields may be empty - If one is, the row is bad. All the bad rows are reported at once (see Validator), and then by default
+// the application quits with 1 as the return code. In LENIENT mode the bad rows are skipped instead and the rest of the data is used.
+//
+// Saving doesn't rewrite the data file every time. Instead, the changes made since the last save are appended to a journal file next
+// to it (the data file's name followed by ".journal"), one change per line -
+// + <TAB> Record    for a treasure that was added
+// - <TAB> Record    for a treasure that was removed
+// where Record is in the data format above. An update is a removal followed by an addition. The journal is replayed on top of the data
+// file when loading. Once the journal gets big compared to the data, it is compacted: the whole data is written to a temporary file
+// which then atomically replaces the data file, and the journal is deleted. A crash at any point leaves either the old or the new data.
+//
+// A binary copy of the data file (see Snapshot) is also kept next to it, with ".snapshot" added to the name. If it is newer than the data
+// file it is loaded instead, since that is much faster than parsing the text.
+//
+// Catalogue numbers are unique. If the data file has the same number more than once, the last treasure with it wins (just like a later
+// addition in the journal does) and a warning is printed.
+//
+// The store can be used from several threads at once, e.g. the UI editing while an export or an indexer reads it. The treasures themselves
+// are kept in an immutable map (see TreasureMap), and every change publishes a new version of it, so anything reading all of them (or
+// looking one up by number) just takes the current version without locking or copying anything. The other indexes are changed in place,
+// so changes take the write lock and searches take the read lock, and every search returns its own copy of the results.
 
 class DataStore {
 
+    // Compact the journal once it has more than one entry for every this many treasures
+    private static final int COMPACTION_RATIO = 10;
+
+    // Fuzzy search doesn't look for names more than this many edits away. Anything further off is rarely what was meant, and searching
+    // further gets much slower.
+    private static final int MAX_TYPOS = 3;
+
     private String filename;
-    public HashSet<Treasure> treasures = new HashSet<>();
-    private Stack<Treasure> undo_stack = new Stack<>(); // Use a stack for deleted treasures since we need LIFO semantics for undoing
+    private String journal_filename;
+    private String snapshot_filename;
+
+    // How many threads to parse the data file with. 1 means parse it on the calling thread.
+    private int loader_threads = 1;
+
+    // Whether bad rows in the data file stop it from loading (STRICT) or are skipped (LENIENT)
+    private Validator.Mode validation_mode = Validator.Mode.STRICT;
+
+    // Guards the changes, undo history and indexes below. Changes to treasures are also made while holding it so that they happen together
+    // with the changes to the indexes, but reading treasures doesn't need it.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Changes made since the last save, already in journal format, and the number of changes in the journal file on disk (which only the
+    // thread that is saving touches)
+    private ArrayList<String> pending_changes = new ArrayList<>();
+    private int journal_entries = 0;
+
+    // The current version of the treasures, keyed by catalogue number. All changes to the data should go through insert() and erase() so the
+    // indexes below stay in sync with this, and a change should only be published once all of it has been made.
+    private final AtomicReference<TreasureMap> treasures = new AtomicReference<>(TreasureMap.EMPTY);
+    private History history = new History(); // What can be undone and redone
+
+    // Secondary index of treasures by their lower-cased name. Several treasures can share a name so each key maps to a set.
+    // A sorted map is used (rather than a hash map) so that prefix searches are just a walk over a sub map.
+    private TreeMap<String, HashSet<Treasure>> name_index = new TreeMap<>();
+
+    // Posting lists of the treasures in each category and each country, so that filtering only has to look at the treasures that match
+    private HashMap<String, HashSet<Treasure>> category_index = new HashMap<>();
+    private HashMap<String, HashSet<Treasure>> country_index = new HashMap<>();
+
+    // The treasures in order of catalogue number, as numbers (see NumberIndex), for range searches and for listing the catalogue in order.
+    // It is built all at once after loading, so while loading it is null.
+    private NumberIndex number_index = new NumberIndex();
+
+    // Filtering walks number_index to get the treasures in order, unless one of the posting lists has fewer than one in this many of the
+    // treasures, in which case it is quicker to sort just those
+    private static final int SORT_RATIO = 16;
+
+    // Full text index of every field (see TextIndex). Building it takes seconds for a big catalogue, so it isn't part of loading; see
+    // buildSearchIndexes. Until it is built this is null.
+    private TextIndex text_index;
+
+    // The search indexes are built from a version of the data without holding the lock, so that searches and changes can carry on
+    // meanwhile. While that is happening, every treasure added to or removed from the indexes is logged here, in order, so the new indexes
+    // can be brought up to date once they are built. Null when no build is running.
+    private ArrayList<IndexChange> index_changes;
+    private final AtomicReference<FutureTask<Void>> search_index_build = new AtomicReference<>();
+
+    private record IndexChange(boolean added, Treasure treasure) {
+    }
+
+    // Trigram index of the names in name_index, for fuzzy searches (see TrigramIndex). Built along with text_index, and null until then.
+    private TrigramIndex name_trigrams;
 
     public DataStore(String filename) {
 
         this.filename = filename;
+        this.journal_filename = filename + ".journal";
+        this.snapshot_filename = filename + ".snapshot";
+
+    }
+
+    public DataStore(String filename, int loader_threads) {
+
+        this(filename);
+        this.loader_threads = loader_threads;
+
+    }
+
+    public DataStore(String filename, int loader_threads, Validator.Mode validation_mode) {
+
+        this(filename, loader_threads);
+        this.validation_mode = validation_mode;
 
     }
 
@@ -34,53 +162,67 @@ class DataStore {
 
         try {
 
-            BufferedReader input = new BufferedReader(new FileReader(filename));
+            ArrayList<Treasure> loaded = readSnapshot();
 
-            // A string "buffer" to store each line while we process it.
-            String record;
+            if (loaded == null) {
 
-            while ((record = input.readLine()) != null) {
+                // The parser does all the work of splitting the file into records and checking them, possibly on several threads.
+                // The indexes aren't thread safe, so the results are always merged into them here.
+                TreasureParser parser = new TreasureParser(filename);
+                Validator validator = new Validator();
+                loaded = (loader_threads > 1) ? parser.parseParallel(loader_threads, validator) : parser.parse(validator);
 
-                // Split the read in line along the tab character
-                String[] fields = record.split("\t");
-
-                if (fields.length > 5) {
-                    // If there are more than five fields, we can still make use of the data, but atleast let the user know something is wrong
-                    System.err.println("WARNING: Extra data fields in " + filename);
-                    System.err.println("Ignoring any additional fields");
-                } else if (fields.length < 5) {
-                    // If there are less than five fields, the data is corrupted and it is not safe to continue
-                    System.err.println("ERROR: Missing data fields in " + filename);
-                    System.err.println(
-                            "The data store must be in the following format: Catalogue Number <TAB> Name <TAB> Image Path <TAB> Category <TAB> Country");
-                    System.exit(1);
+                if (validator.hasProblems()) {
+                    validator.report(filename, System.err);
                 }
 
-                // "Destructure" the array to get the data in each field
-                String catalogue_number = fields[0];
-                String name = fields[1];
-                String image_path = fields[2];
-                String category = fields[3];
-                String country = fields[4];
-
-                // If any of the fields is empty, it is an error and we should abort
-                if ((catalogue_number.compareTo("") == 0)
-                        || (name.compareTo("") == 0)
-                        || (image_path.compareTo("") == 0)
-                        || (category.compareTo("") == 0)
-                        || (country.compareTo("") == 0)) {
-                    System.err.println("Corrupted data in " + filename + ": One or more fields are empty");
+                if (validator.hasErrors() && (validation_mode == Validator.Mode.STRICT)) {
+                    // If the data is corrupted, it is not safe to continue
                     System.err.println("The data store must be in the following format: Catalogue Number <TAB> Name <TAB> Image Path <TAB> Category <TAB> Country");
                     System.exit(1);
                 }
 
-                treasures.add(new Treasure(name, catalogue_number, category, image_path, country));
+                // The snapshot must be an exact copy of the data file, so there can't be one while some of its rows are being skipped
+                if (validator.hasErrors()) {
+                    System.err.println("Skipped " + validator.errors() + " bad rows");
+                } else {
+                    writeSnapshot(loaded);
+                }
 
             }
 
-            input.close();
+            lock.writeLock().lock();
+            try {
+
+                // Build the new version in place rather than publishing a version for every treasure
+                TreasureMap.Builder loading = new TreasureMap.Builder(treasures.get());
+                number_index = null;
+                long duplicates = 0;
+                for (Treasure treasure : loaded) {
+                    Treasure replaced = loading.put(treasure);
+                    if (replaced != null) {
+                        eraseFromIndexes(replaced);
+                        duplicates++;
+                    }
+                    addToIndexes(treasure);
+                }
+                TreasureMap previous = treasures.getAndSet(loading.build());
 
-        } catch (FileNotFoundException e) {
+                // If there was nothing before and no duplicates, the treasures are exactly the ones loaded, and going through those in a list
+                // is much quicker than walking the map
+                number_index = new NumberIndex((previous.isEmpty() && (duplicates == 0)) ? loaded : treasures.get());
+
+                if (duplicates > 0) {
+                    System.err.println("WARNING: " + duplicates + " treasures in " + filename + " have the same catalogue number as an earlier one, and replace it");
+                }
+
+                replayJournal();
+
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+        } catch (FileNotFoundException | NoSuchFileException e) {
 
             System.err.println(e);
             System.exit(2);
@@ -94,22 +236,117 @@ class DataStore {
 
     }
 
-    public void writeData() {
+    // Load the snapshot if it is up to date with the data file, or return null if the data file needs to be parsed instead
+    private ArrayList<Treasure> readSnapshot() throws IOException {
+
+        File snapshot = new File(snapshot_filename);
+        if (!snapshot.exists() || snapshot.lastModified() <= new File(filename).lastModified()) {
+            return null;
+        }
+
+        // The snapshot is only a copy, so if anything is wrong with it (even something read doesn't expect) we can just fall back to the
+        // data file
         try {
+            return Snapshot.read(snapshot_filename);
+        } catch (CorruptDataException e) {
+            System.err.println("WARNING: " + e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("WARNING: Could not read " + snapshot_filename + ": " + e);
+        }
 
-            BufferedWriter output = new BufferedWriter(new FileWriter(filename));
+        System.err.println("Loading " + filename + " instead");
+        return null;
 
-            // Just loop through each treasure and output its fields tab-delimited
-            for (Treasure treasure : treasures) {
-                output.write(
-                        treasure.catalogue_number()
-                            + "\t" + treasure.name()
-                            + "\t" + treasure.image_path()
-                            + "\t" + treasure.category()
-                            + "\t" + treasure.country() + "\n");
+    }
+
+    // Bring the snapshot up to date with the data file. Failing to do this isn't fatal, it just means the next start up will be slower.
+    private void writeSnapshot(Collection<Treasure> data) {
+
+        try {
+            Snapshot.write(data, snapshot_filename);
+        } catch (IOException e) {
+            System.err.println("WARNING: Could not write " + snapshot_filename + ": " + e);
+        }
+
+    }
+
+    // Apply the changes saved in the journal (if there is one) on top of what was loaded from the data file
+    private void replayJournal() throws IOException {
+
+        if (!Files.exists(Paths.get(journal_filename))) {
+            return;
+        }
+
+        byte[] journal = Files.readAllBytes(Paths.get(journal_filename));
+        String contents = new String(journal, StandardCharsets.UTF_8);
+
+        // If we crashed half way through appending to the journal, the last line won't be complete. Changes are only saved once their
+        // whole line is written, so just ignore it.
+        int end = contents.lastIndexOf('\n') + 1;
+
+        TreasureMap replayed = treasures.get();
+        for (String change : contents.substring(0, end).split("\n")) {
+
+            if (change.isEmpty()) {
+                continue;
+            }
+
+            String[] fields = change.split("\t");
+            if (fields.length != 6) {
+                System.err.println("WARNING: Ignoring malformed change in " + journal_filename + ": " + change);
+                continue;
+            }
+
+            Treasure t = new Treasure(fields[2], fields[1], fields[4], fields[3], fields[5]);
+            replayed = fields[0].equals("+") ? insert(replayed, t) : erase(replayed, t);
+
+            journal_entries++;
+
+        }
+
+        treasures.set(replayed);
+
+    }
+
+    // Save the changes made since the last save. This only appends those changes to the journal, so it takes time proportional to the
+    // number of changes rather than the size of the data. Every so often the journal is compacted into the data file.
+    //
+    // Only one save runs at a time, but the data can still be changed while saving; those changes are just left for the next save.
+    public synchronized void writeData() {
+        try {
+
+            // The version of the data that the journal will match once these changes are appended to it, for compacting
+            ArrayList<String> saving;
+            TreasureMap saved;
+            lock.writeLock().lock();
+            try {
+                saving = pending_changes;
+                pending_changes = new ArrayList<>();
+                saved = treasures.get();
+            } finally {
+                lock.writeLock().unlock();
             }
 
-            output.close();
+            if (!saving.isEmpty()) {
+
+                StringBuilder changes = new StringBuilder();
+                for (String change : saving) {
+                    changes.append(change).append('\n');
+                }
+
+                // Make sure the changes are actually on disk before we forget about them
+                try (FileOutputStream journal = new FileOutputStream(journal_filename, true)) {
+                    journal.write(changes.toString().getBytes(StandardCharsets.UTF_8));
+                    journal.getFD().sync();
+                }
+
+                journal_entries += saving.size();
+
+            }
+
+            if (journal_entries > saved.size() / COMPACTION_RATIO) {
+                compact(saved);
+            }
 
         } catch (IOException e) {
 
@@ -120,46 +357,604 @@ class DataStore {
 
     }
 
-    // Searches for and returns the *first* treasure that matches the given name
-    public Treasure searchByName(String name) {
+    // Save everything, compacting the journal into the data file. Any changes not saved yet are written as part of the data, so they
+    // aren't appended to the journal afterwards.
+    public synchronized void compact() throws IOException {
+
+        TreasureMap saved;
+        lock.writeLock().lock();
+        try {
+            pending_changes = new ArrayList<>();
+            saved = treasures.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        compact(saved);
+
+    }
+
+    // Write the given version of the data to a temporary file, atomically swap it in place of the data file, and then delete the (now
+    // redundant) journal. If we crash before the swap the old data file and journal are still there; if we crash after it, replaying the
+    // journal on top of the new data file changes nothing since adding a treasure that is there already or removing one that isn't does
+    // nothing.
+    //
+    // The version has to be exactly the data file plus the journal plus the changes taken out of pending_changes along with it. Changes
+    // made since are still pending, and will go in the new journal on the next save, so they mustn't be in the data written here too.
+    private void compact(TreasureMap data) throws IOException {
+
+        String temporary_filename = filename + ".tmp";
+
+        try (FileOutputStream file = new FileOutputStream(temporary_filename)) {
 
-        for (Treasure treasure : treasures) {
-            if (treasure.name().compareTo(name) == 0) {
-                return treasure;
+            BufferedWriter output = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8), 1 << 16);
+
+            // Just loop through each treasure and output its fields tab-delimited
+            StringBuilder line = new StringBuilder();
+            for (Treasure treasure : data) {
+                line.setLength(0);
+                appendRecord(line, treasure).append('\n');
+                output.append(line);
             }
+
+            output.flush();
+            file.getFD().sync();
+
         }
 
-        return null;
+        Files.move(Paths.get(temporary_filename), Paths.get(filename), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(Paths.get(journal_filename));
+        journal_entries = 0;
+
+        // Written after the data file, so that it is the newer of the two
+        writeSnapshot(data);
+
+    }
+
+    // Append a treasure to the given builder in the data format
+    static StringBuilder appendRecord(StringBuilder builder, Treasure treasure) {
+
+        return builder.append(treasure.catalogue_number())
+                .append('\t').append(treasure.name())
+                .append('\t').append(treasure.image_path())
+                .append('\t').append(treasure.category())
+                .append('\t').append(treasure.country());
+
+    }
+
+    // Remember a change so that it is written to the journal on the next save
+    private void recordChange(char type, Treasure treasure) {
+
+        pending_changes.add(appendRecord(new StringBuilder().append(type).append('\t'), treasure).toString());
+
+    }
+
+    // Returns every treasure whose name matches the given name, ignoring case. The list is empty if there are no matches.
+    public ArrayList<Treasure> searchByName(String name) {
+
+        lock.readLock().lock();
+        try {
+
+            HashSet<Treasure> matches = name_index.get(normalize(name));
+
+            if (matches == null) {
+                return new ArrayList<>();
+            }
+
+            return new ArrayList<>(matches);
+
+        } finally {
+            lock.readLock().unlock();
+        }
+
+    }
+
+    // Returns every treasure whose name starts with the given prefix, ignoring case, in alphabetical order of name
+    public ArrayList<Treasure> searchByNamePrefix(String prefix) {
+
+        ArrayList<Treasure> matches = new ArrayList<>();
+
+        // Every key starting with the prefix sorts between the prefix itself and the prefix followed by the largest possible character
+        String from = normalize(prefix);
+        String to = from + Character.MAX_VALUE;
+
+        lock.readLock().lock();
+        try {
+            for (HashSet<Treasure> treasures_with_name : name_index.subMap(from, true, to, false).values()) {
+                matches.addAll(treasures_with_name);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return matches;
+
+    }
+
+    // Returns the treasures in the given category and country, in order of catalogue number (see NumberIndex). Either may be null, meaning
+    // any category or any country.
+    //
+    // number_index is already in order, so walking it and picking out the matches doesn't need any sorting. If there are only a few
+    // treasures in the category or country though, it's quicker to just sort those (and when both are given, only the smaller of the two
+    // posting lists is looked at).
+    public Collection<Treasure> filter(String category, String country) {
+
+        lock.readLock().lock();
+        try {
+
+            if ((category == null) && (country == null)) {
+                ArrayList<Treasure> all = new ArrayList<>(number_index.size());
+                for (Treasure treasure : number_index) {
+                    all.add(treasure);
+                }
+                return all;
+            }
+
+            HashSet<Treasure> in_category = (category == null) ? null : category_index.getOrDefault(category, new HashSet<>());
+            HashSet<Treasure> in_country = (country == null) ? null : country_index.getOrDefault(country, new HashSet<>());
+            HashSet<Treasure> smaller = ((in_country == null) || ((in_category != null) && (in_category.size() <= in_country.size()))) ? in_category : in_country;
+
+            // Categories and countries are interned (see Treasure) so they can be checked by identity. Look them up without adding them
+            // to the pools though, since they may not be any treasure's (and then nothing matches).
+            String wanted_category = (category == null) ? null : Treasure.categories.lookup(category);
+            String wanted_country = (country == null) ? null : Treasure.countries.lookup(country);
+            if (((category != null) && (wanted_category == null)) || ((country != null) && (wanted_country == null))) {
+                return new ArrayList<>();
+            }
+
+            ArrayList<Treasure> matches = new ArrayList<>();
+            boolean sorting = smaller.size() < number_index.size() / SORT_RATIO;
+            for (Treasure treasure : sorting ? smaller : number_index) {
+                if (((wanted_category == null) || (treasure.category() == wanted_category))
+                        && ((wanted_country == null) || (treasure.country() == wanted_country))) {
+                    matches.add(treasure);
+                }
+            }
+            return sorting ? NumberIndex.sorted(matches) : matches;
+
+        } finally {
+            lock.readLock().unlock();
+        }
+
+    }
+
+    // Returns every treasure as they are right now. Later changes to the data don't change what is returned, and no change is ever half
+    // in it. This is just the current version of the data, so it takes constant time.
+    public Collection<Treasure> snapshot() {
+        return treasures.get();
+    }
+
+    public int size() {
+        return treasures.get().size();
+    }
+
+    // Returns every category that at least one treasure is in
+    public Set<String> categories() {
+
+        lock.readLock().lock();
+        try {
+            return Set.copyOf(category_index.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
 
     }
 
-    // Same as above but searches by catalogue number
+    // Returns every country that at least one treasure is from
+    public Set<String> countries() {
+
+        lock.readLock().lock();
+        try {
+            return Set.copyOf(country_index.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+
+    }
+
+    // Returns the (at most) limit treasures that best match a full text query over all their fields, best first (see TextIndex)
+    public List<Treasure> searchText(String query, int limit) {
+
+        awaitSearchIndexes();
+
+        lock.readLock().lock();
+        try {
+            return text_index.search(query, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+    }
+
+    // Returns the treasures with the names closest to the given (possibly misspelt) name, ignoring case. Treasures with the limit closest
+    // names are returned, closest first, but only names that are no more than about a third of the name's length (and at most
+    // MAX_TYPOS edits) away, see TrigramIndex.
+    public ArrayList<Treasure> searchByNameFuzzy(String name, int limit) {
+
+        String query = normalize(name);
+        int max_distance = Math.max(1, Math.min(MAX_TYPOS, query.length() / 3));
+
+        awaitSearchIndexes();
+
+        lock.readLock().lock();
+        try {
+            return treasuresNamed(name_trigrams.closest(query, limit, max_distance));
+        } finally {
+            lock.readLock().unlock();
+        }
+
+    }
+
+    private ArrayList<Treasure> treasuresNamed(List<TrigramIndex.Match> matches) {
+
+        ArrayList<Treasure> treasures_named = new ArrayList<>();
+        for (TrigramIndex.Match match : matches) {
+            treasures_named.addAll(name_index.get(match.word()));
+        }
+        return treasures_named;
+
+    }
+
+    // Start building the search indexes on a background thread, if they aren't built or being built already. Call this once the data is
+    // loaded, so that by the time the user searches they are (usually) ready. Otherwise the first search builds them itself.
+    public void buildSearchIndexes() {
+
+        FutureTask<Void> build = new FutureTask<>(this::buildSearchIndexesNow, null);
+        if (search_index_build.compareAndSet(null, build)) {
+            Thread thread = new Thread(build, "search-indexes");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+    }
+
+    // Whether the search indexes have been built, so that a search won't have to wait for them
+    public boolean searchIndexesReady() {
+
+        FutureTask<Void> build = search_index_build.get();
+        return (build != null) && build.isDone();
+
+    }
+
+    // Wait for the search indexes to be built, building them on this thread if nothing has started to. This doesn't hold the lock, so
+    // changes to the data aren't held up meanwhile.
+    private void awaitSearchIndexes() {
+
+        FutureTask<Void> build = new FutureTask<>(this::buildSearchIndexesNow, null);
+        if (search_index_build.compareAndSet(null, build)) {
+            build.run();
+        }
+
+        try {
+            search_index_build.get().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the search indexes", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not build the search indexes", e.getCause());
+        }
+
+    }
+
+    private void buildSearchIndexesNow() {
+
+        // Start logging changes at exactly the version the indexes are built from
+        TreasureMap version;
+        lock.writeLock().lock();
+        try {
+            version = treasures.get();
+            index_changes = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // The slow part. No one else can see the new index yet, and the version of the data never changes, so this needs no lock.
+        TextIndex text = new TextIndex();
+        TrigramIndex names = new TrigramIndex();
+        for (Treasure t : version) {
+            text.add(t);
+            names.add(normalize(t.name()));
+        }
+
+        // Catch up with whatever changed while building, then start using the index
+        lock.writeLock().lock();
+        try {
+
+            // A name stays in the trigram index for as long as any treasure has it, which the log alone doesn't say, so every name it
+            // touched is just checked against name_index as it is now
+            HashSet<String> changed_names = new HashSet<>();
+            for (IndexChange change : index_changes) {
+                if (change.added()) {
+                    text.add(change.treasure());
+                } else {
+                    text.remove(change.treasure());
+                }
+                changed_names.add(normalize(change.treasure().name()));
+            }
+
+            for (String name : changed_names) {
+                if (name_index.containsKey(name)) {
+                    names.add(name);
+                } else {
+                    names.remove(name);
+                }
+            }
+
+            index_changes = null;
+            text_index = text;
+            name_trigrams = names;
+
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+    }
+
+    // Names are indexed in lower case so that searches are case-insensitive
+    private static String normalize(String name) {
+        return name.toLowerCase();
+    }
+
+    // Same as above but searches by catalogue number. This is a constant time lookup, and doesn't need the lock.
     public Treasure searchByNumber(String number) {
 
-        for (Treasure treasure : treasures) {
-            if (treasure.catalogue_number().compareTo(number) == 0) {
-                return treasure;
+        return treasures.get().get(number);
+
+    }
+
+    // Returns every treasure numbered from `from` to `to` (inclusive), in order of catalogue number. Only catalogue numbers that are numbers
+    // are ever in a range.
+    public ArrayList<Treasure> searchByNumberRange(long from, long to) {
+
+        lock.readLock().lock();
+        try {
+            return number_index.range(from, to);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+    }
+
+    // Returns the treasure whose catalogue number is numerically closest to the given number (the smaller one if two are as close), or null
+    // if no catalogue number is a number
+    public Treasure searchByNearestNumber(long number) {
+
+        lock.readLock().lock();
+        try {
+            return number_index.nearest(number);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+    }
+
+    // Add a treasure to the data, to be saved on the next save. Fails if another treasure already has its catalogue number.
+    public void add(Treasure t) throws DuplicateNumberException {
+
+        change(new History.Change(List.of(), List.of(t)));
+
+    }
+
+    // Remove a treasure from the data, to be saved on the next save
+    public void remove(Treasure t) {
+
+        removeAll(List.of(t));
+
+    }
+
+    // Remove all the given treasures from the data as one change, which is undone all at once. Treasures that aren't in the data are
+    // ignored. Returns the treasures that were removed.
+    public List<Treasure> removeAll(Collection<Treasure> removing) {
+
+        lock.writeLock().lock();
+        try {
+
+            TreasureMap current = treasures.get();
+            ArrayList<Treasure> removed = new ArrayList<>(removing.size());
+            for (Treasure t : removing) {
+                if (current.contains(t)) {
+                    removed.add(t);
+                }
             }
+
+            // Don't fill the history with changes that do nothing
+            if (removed.isEmpty()) {
+                return removed;
+            }
+
+            History.Change change = new History.Change(removed, List.of());
+            change(change);
+            return change.removed();
+
+        } catch (DuplicateNumberException e) {
+            // Only adding a treasure can clash with another one
+            throw new AssertionError(e);
+        } finally {
+            lock.writeLock().unlock();
         }
 
-        return null;
+    }
+
+    // Swap a treasure for an edited copy of it, in one go so no one else ever sees the data without either of them. Fails if the edit
+    // gives it the catalogue number of a different treasure.
+    public void replace(Treasure old, Treasure edited) throws DuplicateNumberException {
+
+        change(new History.Change(List.of(old), List.of(edited)));
+
+    }
+
+    // Undo the most recent change that hasn't been undone yet. Returns the change that was made to undo it (i.e. what was removed and
+    // added), or null if there is nothing to undo.
+    public History.Change undo() throws DuplicateNumberException {
+
+        lock.writeLock().lock();
+        try {
+
+            History.Change change = history.nextUndo();
+            if (change != null) {
+                apply(change);
+                history.undone();
+            }
+            return change;
+
+        } finally {
+            lock.writeLock().unlock();
+        }
 
     }
 
-    // Deletes a treasure, but silently adds it to the undo stack
-    public void delete(Treasure t) {
-        undo_stack.add(t);
-        treasures.remove(t);
+    // Make the most recently undone change again. Returns the change, or null if there is nothing to redo.
+    public History.Change redo() throws DuplicateNumberException {
+
+        lock.writeLock().lock();
+        try {
+
+            History.Change change = history.nextRedo();
+            if (change != null) {
+                apply(change);
+                history.redone();
+            }
+            return change;
+
+        } finally {
+            lock.writeLock().unlock();
+        }
+
     }
 
-    // Return last treasure added to undo stack or null if none exists
-    public Treasure undo() {
+    // Roughly how much memory the undo history may use, in bytes, before it starts forgetting the oldest changes
+    public void setHistoryLimit(long max_bytes) {
+
+        lock.writeLock().lock();
         try {
-            Treasure t = undo_stack.pop();
-            treasures.add(t);
-            return t;
-        } catch (EmptyStackException e) {
-            return null;
+            history.setMaxBytes(max_bytes);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+    }
+
+    // Make a change and remember it so that it can be undone
+    private void change(History.Change change) throws DuplicateNumberException {
+
+        lock.writeLock().lock();
+        try {
+            apply(change);
+            history.record(change);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+    }
+
+    // Remove and then add the treasures in a change, to be saved on the next save (so undoing and redoing are saved like any other change).
+    // Either all of it is made or (if it would give two treasures the same catalogue number) none of it is.
+    private void apply(History.Change change) throws DuplicateNumberException {
+
+        // The treasures being removed give up their numbers. Most changes only remove one treasure, so only make a set when it's worth it.
+        Collection<Treasure> removing = (change.removed().size() > 8) ? new HashSet<>(change.removed()) : change.removed();
+
+        TreasureMap current = treasures.get();
+        for (Treasure t : change.added()) {
+            Treasure existing = current.get(t.catalogue_number());
+            if ((existing != null) && !removing.contains(existing)) {
+                throw new DuplicateNumberException(t.catalogue_number());
+            }
+        }
+
+        // Make the whole change on a version no one else can see yet, and only publish it once it's done, so readers that don't take the
+        // lock see either none of the change or all of it
+        TreasureMap changed = current;
+        for (Treasure t : change.removed()) {
+            // Only save the removals that removed something (e.g. not one of a treasure that has already gone)
+            TreasureMap erased = erase(changed, t);
+            if (erased != changed) {
+                recordChange('-', t);
+            }
+            changed = erased;
+        }
+        for (Treasure t : change.added()) {
+            recordChange('+', t);
+            changed = insert(changed, t);
+        }
+        treasures.set(changed);
+
+    }
+
+    // Add a treasure to a version of the data and to the indexes, replacing any treasure with the same catalogue number. Returns the new
+    // version, which the caller has to publish.
+    private TreasureMap insert(TreasureMap current, Treasure t) {
+        Treasure replaced = current.get(t.catalogue_number());
+        if (replaced != null) {
+            eraseFromIndexes(replaced);
+        }
+        addToIndexes(t);
+        return current.with(t);
+    }
+
+    // Remove a treasure from a version of the data and from the indexes, and return the new version (which the caller has to publish).
+    // Nothing happens if a different treasure has its number.
+    private TreasureMap erase(TreasureMap current, Treasure t) {
+        TreasureMap changed = current.without(t);
+        if (changed != current) {
+            eraseFromIndexes(t);
+        }
+        return changed;
+    }
+
+    private void addToIndexes(Treasure t) {
+        String name = normalize(t.name());
+        if ((name_trigrams != null) && !name_index.containsKey(name)) {
+            name_trigrams.add(name);
+        }
+
+        addToIndex(name_index, name, t);
+        addToIndex(category_index, t.category(), t);
+        addToIndex(country_index, t.country(), t);
+        if (number_index != null) {
+            number_index.add(t);
+        }
+        if (text_index != null) {
+            text_index.add(t);
+        }
+        if (index_changes != null) {
+            index_changes.add(new IndexChange(true, t));
+        }
+    }
+
+    private void eraseFromIndexes(Treasure t) {
+        String name = normalize(t.name());
+        removeFromIndex(name_index, name, t);
+        if ((name_trigrams != null) && !name_index.containsKey(name)) {
+            name_trigrams.remove(name);
+        }
+
+        removeFromIndex(category_index, t.category(), t);
+        removeFromIndex(country_index, t.country(), t);
+        if (number_index != null) {
+            number_index.remove(t);
+        }
+        if (text_index != null) {
+            text_index.remove(t);
+        }
+        if (index_changes != null) {
+            index_changes.add(new IndexChange(false, t));
+        }
+    }
+
+    // Add a treasure to the set of treasures with the given key in an index
+    private static void addToIndex(Map<String, HashSet<Treasure>> index, String key, Treasure t) {
+        index.computeIfAbsent(key, k -> new HashSet<>()).add(t);
+    }
+
+    // Remove a treasure from the set of treasures with the given key in an index, dropping the key if there are none left
+    private static void removeFromIndex(Map<String, HashSet<Treasure>> index, String key, Treasure t) {
+        HashSet<Treasure> treasures_with_key = index.get(key);
+        if (treasures_with_key != null) {
+            treasures_with_key.remove(t);
+            if (treasures_with_key.isEmpty()) {
+                index.remove(key);
+            }
         }
     }
 }
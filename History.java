@@ -0,0 +1,144 @@
+import java.util.ArrayDeque;
+import java.util.List;
+
+// The changes that can be undone, and the undone changes that can be redone. Every change to the data (creating, updating or deleting
+// treasures) is recorded as the treasures it removed and the treasures it added, so undoing it is just removing what it added and adding
+// back what it removed. Deleting thousands of treasures at once is one change, and undone in one go.
+//
+// A run of updates to the same treasure is kept as one change from before the first update to after the last, so it is undone in one step
+// (and doesn't fill up the history).
+//
+// The history only keeps up to a given (rough) number of bytes of treasures. Once it has more than that, the oldest changes are forgotten.
+// The most recent change is always kept though, however big it is.
+class History {
+
+    record Change(List<Treasure> removed, List<Treasure> added) {
+
+        Change {
+            removed = List.copyOf(removed);
+            added = List.copyOf(added);
+        }
+
+        // The change that puts things back as they were before this one
+        Change inverse() {
+            return new Change(added, removed);
+        }
+
+        boolean isUpdate() {
+            return (removed.size() == 1) && (added.size() == 1);
+        }
+
+        // Roughly how much memory the treasures in this change take up. Treasures still in the data are counted too, so this is an
+        // overestimate.
+        long bytes() {
+
+            long bytes = 0;
+            for (Treasure t : removed) {
+                bytes += bytes(t);
+            }
+            for (Treasure t : added) {
+                bytes += bytes(t);
+            }
+            return bytes;
+
+        }
+
+        // The record and three strings of its own (the category and country are shared with every other treasure, see Treasure)
+        private static long bytes(Treasure t) {
+
+            return 32 + 3 * 40 + t.name().length() + t.catalogue_number().length() + t.image_path().length();
+
+        }
+
+    }
+
+    // The default limit, which is enough for hundreds of thousands of treasures
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private long max_bytes;
+    private long bytes = 0;
+
+    // Most recent first
+    private ArrayDeque<Change> undo = new ArrayDeque<>();
+    private ArrayDeque<Change> redo = new ArrayDeque<>();
+
+    public History() {
+
+        this(DEFAULT_MAX_BYTES);
+
+    }
+
+    public History(long max_bytes) {
+
+        this.max_bytes = max_bytes;
+
+    }
+
+    public void setMaxBytes(long max_bytes) {
+
+        this.max_bytes = max_bytes;
+        evict();
+
+    }
+
+    // Remember a change that has just been made. Anything that was undone can't be redone after this.
+    public void record(Change change) {
+
+        for (Change undone : redo) {
+            bytes -= undone.bytes();
+        }
+        redo.clear();
+
+        // Another update to the treasure that was just updated replaces that update
+        Change last = undo.peek();
+        if ((last != null) && last.isUpdate() && change.isUpdate() && (last.added().get(0) == change.removed().get(0))) {
+            undo.pop();
+            bytes -= last.bytes();
+            change = new Change(last.removed(), change.added());
+        }
+
+        undo.push(change);
+        bytes += change.bytes();
+        evict();
+
+    }
+
+    // The change that undoes the most recent change, or null if there's nothing to undo. Once it has been made, call undone().
+    public Change nextUndo() {
+
+        Change last = undo.peek();
+        return (last == null) ? null : last.inverse();
+
+    }
+
+    public void undone() {
+
+        redo.push(undo.pop());
+
+    }
+
+    // The change that redoes the most recently undone change, or null if there's nothing to redo. Once it has been made, call redone().
+    public Change nextRedo() {
+
+        return redo.peek();
+
+    }
+
+    public void redone() {
+
+        undo.push(redo.pop());
+
+    }
+
+    // Forget the oldest changes until the history fits. Changes that can be redone are newer than any that can be undone, so they only go
+    // once there is nothing left to undo, starting with the one that would be redone last.
+    private void evict() {
+
+        while ((bytes > max_bytes) && (undo.size() + redo.size() > 1)) {
+            Change oldest = undo.isEmpty() ? redo.pollLast() : undo.pollLast();
+            bytes -= oldest.bytes();
+        }
+
+    }
+
+}
@@ -0,0 +1,137 @@
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+
+// Loads treasure images on background threads and keeps the most recently used ones in memory. Only the thumbnails (see Thumbnails) are
+// ever kept, not the full size images.
+//
+// Toolkit.getImage() caches every image it has ever loaded and never lets any of them go, and decoding the large photos blocks whatever
+// thread asked for them. This cache instead has a limit on how many bytes of decoded images it holds, and throws away the least recently
+// used images when it goes over.
+class ImageCache {
+
+    private long max_bytes;
+    private long used_bytes = 0;
+
+    // Decoded images by path, in order of use (least recently used first)
+    private LinkedHashMap<String, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Images that are being decoded right now, so that asking for the same image twice only decodes it once
+    private HashMap<String, CompletableFuture<BufferedImage>> loading = new HashMap<>();
+
+    private Thumbnails thumbnails;
+    private ExecutorService decoder;
+
+    public ImageCache(Thumbnails thumbnails, long max_bytes, int threads) {
+
+        this.thumbnails = thumbnails;
+        this.max_bytes = max_bytes;
+
+        // Daemon threads, so that an image still being decoded doesn't stop the application from quitting
+        this.decoder = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "image-decoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    }
+
+    // Returns the image if it is already in memory, or null if it isn't
+    public synchronized BufferedImage getIfPresent(String path) {
+
+        return images.get(path);
+
+    }
+
+    // Returns the image, waiting for it to be decoded if it isn't in memory. Returns null if it can't be read.
+    public BufferedImage get(String path) {
+
+        return load(path).join();
+
+    }
+
+    // Decode the image in the background (if it isn't in memory already) and then pass it to the callback on the event dispatch thread.
+    // The callback gets null if the image can't be read.
+    public void request(String path, Consumer<BufferedImage> callback) {
+
+        load(path).thenAccept(image -> SwingUtilities.invokeLater(() -> callback.accept(image)));
+
+    }
+
+    // Start decoding the image in the background so that it is ready when it's needed
+    public void prefetch(String path) {
+
+        load(path);
+
+    }
+
+    private synchronized CompletableFuture<BufferedImage> load(String path) {
+
+        BufferedImage image = images.get(path);
+        if (image != null) {
+            return CompletableFuture.completedFuture(image);
+        }
+
+        CompletableFuture<BufferedImage> in_progress = loading.get(path);
+        if (in_progress != null) {
+            return in_progress;
+        }
+
+        // An image that fails to decode is treated like one that can't be read, so callers get null rather than an exception, and
+        // whenComplete takes it out of loading however decoding ended (otherwise it would stay there, and never be asked for again)
+        CompletableFuture<BufferedImage> future = CompletableFuture.supplyAsync(() -> decode(path), decoder)
+                .exceptionally(failure -> {
+                    System.err.println("WARNING: Couldn't load " + path + ": " + failure);
+                    return null;
+                });
+        loading.put(path, future);
+        future.whenComplete((decoded, failure) -> finished(path, decoded));
+        return future;
+
+    }
+
+    // Called once an image has been decoded, to move it from loading into the cache
+    private synchronized void finished(String path, BufferedImage image) {
+
+        loading.remove(path);
+
+        // Images that can't be read aren't remembered, in case they turn up later
+        if (image == null) {
+            return;
+        }
+
+        images.put(path, image);
+        used_bytes += sizeOf(image);
+
+        // Throw away the least recently used images until we are back under the limit, but always keep the one we just loaded
+        Iterator<Map.Entry<String, BufferedImage>> eldest = images.entrySet().iterator();
+        while (used_bytes > max_bytes && images.size() > 1) {
+            Map.Entry<String, BufferedImage> entry = eldest.next();
+            used_bytes -= sizeOf(entry.getValue());
+            eldest.remove();
+        }
+
+    }
+
+    private BufferedImage decode(String path) {
+
+        return thumbnails.load(path);
+
+    }
+
+    // Roughly how much memory a decoded image takes up
+    private static long sizeOf(BufferedImage image) {
+
+        return (long) image.getWidth() * image.getHeight() * 4;
+
+    }
+
+}
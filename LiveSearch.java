@@ -0,0 +1,142 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.swing.SwingUtilities;
+
+// Searches as the user types, without ever doing the searching on the event dispatch thread.
+//
+// Every keystroke would start a search, but only the last one in a burst of typing matters, so a search only starts once nothing more
+// has been typed for a short while (it is debounced). The searching happens on a background thread, and the results are handed back to
+// the event dispatch thread a batch at a time, so that a query matching most of the catalogue doesn't hold up the UI while they are all
+// added to the list.
+//
+// Each search has a generation number, and starting a new search (or cancelling) moves on to the next one. A search that is no longer the
+// latest stops at its next batch, and any batches it already handed over are thrown away when they arrive, so results from an old query
+// never turn up after those of a newer one.
+//
+// Searches started from a button (see searchNow) run on the same thread, so that they never freeze the UI either (e.g. while the search
+// indexes are still being built) and a newer search of either kind replaces them in the same way.
+class LiveSearch {
+
+    // Gets the results of a search, on the event dispatch thread
+    interface Results {
+
+        // Called with each batch of results in turn. The first batch of a search (which may be empty) replaces the results of any search
+        // before it, and done is true for the last one.
+        void batch(List<Treasure> batch, boolean first, boolean done);
+
+    }
+
+    private DataStore store;
+    private long delay_ms;
+    private int batch_size;
+
+    private final AtomicLong generation = new AtomicLong();
+    private ScheduledExecutorService searcher;
+
+    // The search waiting to run or running, if any
+    private Future<?> pending;
+
+    public LiveSearch(DataStore store, long delay_ms, int batch_size) {
+
+        this.store = store;
+        this.delay_ms = delay_ms;
+        this.batch_size = batch_size;
+
+        // A daemon thread, so that a search still running doesn't stop the application from quitting
+        this.searcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "live-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    }
+
+    // Search for the given query once the typing stops, in place of any search already waiting or running. Call this on the event
+    // dispatch thread.
+    public void search(String query, Results results) {
+
+        long search = cancel();
+        pending = searcher.schedule(() -> run(search, query, results), delay_ms, TimeUnit.MILLISECONDS);
+
+    }
+
+    // Run a search on the background thread straight away, in place of any search already waiting or running, and hand what it finds to
+    // the given callback on the event dispatch thread (unless another search has started since). Call this on the event dispatch thread.
+    public <T> void searchNow(Supplier<T> search, Consumer<T> results) {
+
+        long generation_now = cancel();
+        pending = searcher.submit(() -> {
+
+            T found;
+            try {
+                found = search.get();
+            } catch (RuntimeException e) {
+                // Otherwise the future would swallow it
+                System.err.println(e);
+                return;
+            }
+
+            SwingUtilities.invokeLater(() -> {
+                if (generation.get() == generation_now) {
+                    results.accept(found);
+                }
+            });
+
+        });
+
+    }
+
+    // Stop any search waiting or running, and throw away any of its results that haven't been handed over yet. Returns the new generation.
+    public long cancel() {
+
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+        return generation.incrementAndGet();
+
+    }
+
+    private void run(long search, String query, Results results) {
+
+        // The catalogue number (if it is one) first, then the names starting with the query in alphabetical order
+        ArrayList<Treasure> found = new ArrayList<>();
+        Treasure numbered = store.searchByNumber(query.trim());
+        if (numbered != null) {
+            found.add(numbered);
+        }
+        if (generation.get() != search) {
+            return;
+        }
+        found.addAll(store.searchByNamePrefix(query));
+
+        for (int from = 0; (from == 0) || (from < found.size()); from += batch_size) {
+
+            if (generation.get() != search) {
+                return;
+            }
+
+            List<Treasure> batch = List.copyOf(found.subList(from, Math.min(found.size(), from + batch_size)));
+            boolean first = (from == 0);
+            boolean done = (from + batch_size >= found.size());
+
+            SwingUtilities.invokeLater(() -> {
+                // A newer search (or a cancel) has happened since, on this thread, so nothing from this search can get past here after it
+                if (generation.get() == search) {
+                    results.batch(batch, first, done);
+                }
+            });
+
+        }
+
+    }
+
+}
@@ -1,22 +1,44 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.swing.*;
 import javax.swing.event.*;
 
-public class Museum implements ActionListener, ListSelectionListener {
+public class Museum implements ActionListener, ListSelectionListener, DocumentListener {
+
+    // The most full text search results to show; nobody looks further down than this
+    private static final int MAX_SEARCH_RESULTS = 1000;
+
+    // How many of the closest names a fuzzy search shows the treasures for
+    private static final int FUZZY_MATCHES = 10;
+
+    // Searching as the user types waits until they have stopped for this long, and adds the results to the list this many at a time
+    private static final long LIVE_SEARCH_DELAY_MS = 150;
+    private static final int LIVE_SEARCH_BATCH = 500;
+
+    // Two catalogue numbers with a dash between them, e.g. 1000-5000
+    private static final Pattern NUMBER_RANGE = Pattern.compile("(\\d{1,18})\\s*-\\s*(\\d{1,18})");
 
     private DataStore store;
     private UI ui;
+    private LiveSearch live_search;
 
     public static void main(String[] args) {
 
-        Museum museum = new Museum();
+        // With --lenient, bad rows in the data file are skipped instead of stopping the application from starting
+        boolean lenient = (args.length > 0) && args[0].equals("--lenient");
+        Museum museum = new Museum(lenient ? Validator.Mode.LENIENT : Validator.Mode.STRICT);
 
         // Initialize the GUI the first time around. These will be refreshed as needed by our action handlers.
         museum.store.readData();
-        museum.ui.loadFilters(museum.store.treasures);
-        museum.ui.loadEntries(museum.store.treasures);
+        museum.store.buildSearchIndexes();
+        museum.ui.loadFilters(museum.store);
+        museum.ui.loadEntries(museum.store);
 
         // Set some application level settings
         museum.ui.setTitle("University of Airthrey Museum");
@@ -27,11 +49,15 @@ public class Museum implements ActionListener, ListSelectionListener {
 
     }
 
-    public Museum() {
+    public Museum(Validator.Mode validation_mode) {
 
-        store = new DataStore("treasures.txt");
+        // Use every core to load the data file; this makes no difference for small files, but large ones load much faster
+        store = new DataStore("treasures.txt", Runtime.getRuntime().availableProcessors(), validation_mode);
         ui = new UI(this, this);
 
+        live_search = new LiveSearch(store, LIVE_SEARCH_DELAY_MS, LIVE_SEARCH_BATCH);
+        ui.addSearchQueryListener(this);
+
     }
 
     public void actionPerformed(ActionEvent e) {
@@ -54,26 +80,9 @@ public class Museum implements ActionListener, ListSelectionListener {
                 return;
             }
 
+            // The image is almost certainly in memory already since the entry is selected
             Graphics graphics = print_job.getGraphics();
-
-            // Prints -
-            //      Name
-            //      Category
-            //      Image Path
-            //      Image
-
-            int xLocation = 10;
-            int yLocation = 20;
-            graphics.drawString("Name: " + t.name(), xLocation, yLocation);
-
-            yLocation += 20;
-            graphics.drawString("Category: " + t.category(), xLocation, yLocation);
-
-            yLocation += 20;
-            graphics.drawString("Image Path: " + t.image_path(), xLocation, yLocation);
-
-            yLocation += 30;
-            graphics.drawImage(ui.drawing_panel.getImage(), xLocation, yLocation, 400, 400, null); // TODO: How to scale image?
+            CatalogueExporter.drawSheet(graphics, t, ui.images.get(t.image_path()));
 
             graphics.dispose();
             print_job.end();
@@ -92,45 +101,72 @@ public class Museum implements ActionListener, ListSelectionListener {
                 return;
             }
 
-            // remove old treasure and add new one, then reload entries and change focus to the newly edited entry
-            store.treasures.remove(old);
-            store.treasures.add(edited);
+            // swap the old treasure for the new one, then swap it in the list and change focus to the newly edited entry
+            try {
+                store.replace(old, edited);
+            } catch (DuplicateNumberException error) {
+                ui.notify("Cannot update: " + error.getMessage());
+                return;
+            }
 
-            ui.loadEntries(store.treasures);
+            ui.entryReplaced(old, edited);
             ui.focus(edited);
 
         }
 
         if (e.getSource() == ui.delete) {
-            Treasure selected_value = ui.list.getSelectedValue();
-            if (selected_value == null) {
+            List<Treasure> selected_values = ui.list.getSelectedValuesList();
+            if (selected_values.isEmpty()) {
                 ui.notify("Select an entry before attempting to delete it!");
                 return;
             }
 
-            store.delete(selected_value);
+            // All the selected entries are deleted as one change, so a single undo brings them all back
+            List<Treasure> deleted = store.removeAll(selected_values);
 
-            // Reload the entries; and change focus to nothing
-            ui.loadEntries(store.treasures);
+            // Take the entries out of the list; and change focus to nothing
+            ui.entriesRemoved(deleted);
             ui.focus();
 
         }
 
         if (e.getSource() == ui.undo) {
-            Treasure undone = store.undo();
+            History.Change undone;
+            try {
+                undone = store.undo();
+            } catch (DuplicateNumberException error) {
+                ui.notify("Cannot undo: " + error.getMessage());
+                return;
+            }
 
             if (undone == null) {
                 ui.notify("Cannot undo: No undo history left!");
                 return;
             }
 
-            // Reload entries and refocus on the just-restored treasure
-            ui.loadEntries(store.treasures);
-            ui.focus(undone);
+            showChange(undone);
+        }
+
+        if (e.getSource() == ui.redo) {
+            History.Change redone;
+            try {
+                redone = store.redo();
+            } catch (DuplicateNumberException error) {
+                ui.notify("Cannot redo: " + error.getMessage());
+                return;
+            }
+
+            if (redone == null) {
+                ui.notify("Cannot redo: Nothing has been undone!");
+                return;
+            }
+
+            showChange(redone);
         }
 
         if ((e.getSource() == ui.category_filter) || (e.getSource() == ui.country_filter)) {
-            ui.loadEntries(store.treasures);
+            stopLiveSearch();
+            ui.loadEntries(store);
         }
 
         if (e.getSource() == ui.clear_filter_button) {
@@ -145,15 +181,19 @@ public class Museum implements ActionListener, ListSelectionListener {
                 return;
             }
 
-            Treasure search_result = store.searchByName(query);
+            // Look for exact (case-insensitive) matches first, and fall back to names starting with the query if there are none
+            ArrayList<Treasure> search_results = store.searchByName(query);
+            if (search_results.isEmpty()) {
+                search_results = store.searchByNamePrefix(query);
+            }
 
-            if (search_result == null) {
+            if (search_results.isEmpty()) {
                 ui.notify("No matching name found for " + query);
                 return;
             }
 
-            // Focus on the just found search result
-            ui.focus(search_result);
+            // Focus on all the just found search results
+            ui.focus(search_results);
         }
 
         if (e.getSource() == ui.number_search_button) {
@@ -164,8 +204,36 @@ public class Museum implements ActionListener, ListSelectionListener {
                 return;
             }
 
+            // A range of numbers, e.g. 1000-5000, shows every treasure numbered from one to the other in the catalogue list, in order
+            Matcher range = NUMBER_RANGE.matcher(query.trim());
+            if (range.matches()) {
+                long from = Long.parseLong(range.group(1));
+                long to = Long.parseLong(range.group(2));
+                ArrayList<Treasure> search_results = store.searchByNumberRange(Math.min(from, to), Math.max(from, to));
+
+                if (search_results.isEmpty()) {
+                    ui.notify("No catalogue numbers from " + from + " to " + to);
+                    return;
+                }
+
+                stopLiveSearch();
+                ui.showResults(search_results);
+                ui.focus(search_results.get(0));
+                return;
+            }
+
             Treasure search_result = store.searchByNumber(query);
 
+            // If there's no treasure with that number, show the one with the nearest number instead
+            if ((search_result == null) && (NumberIndex.key(query.trim()) != NumberIndex.NOT_A_NUMBER)) {
+                Treasure nearest = store.searchByNearestNumber(NumberIndex.key(query.trim()));
+                if (nearest != null) {
+                    ui.notify("No matching number found for " + query + ", the nearest is " + nearest.catalogue_number());
+                    ui.focus(nearest);
+                    return;
+                }
+            }
+
             if (search_result == null) {
                 ui.notify("No matching number found for " + query);
                 return;
@@ -175,6 +243,30 @@ public class Museum implements ActionListener, ListSelectionListener {
             ui.focus(search_result);
         }
 
+        if (e.getSource() == ui.text_search_button) {
+            String query = ui.getSearchQuery();
+
+            if (query.isBlank()) {
+                ui.notify("No query given for search!");
+                return;
+            }
+
+            // Show the results in the catalogue list in order of how well they match, and focus on the best one
+            searchInBackground(() -> store.searchText(query, MAX_SEARCH_RESULTS), "Nothing matches " + query);
+        }
+
+        if (e.getSource() == ui.fuzzy_search_button) {
+            String query = ui.getSearchQuery();
+
+            if (query.isBlank()) {
+                ui.notify("No query given for search!");
+                return;
+            }
+
+            // Show the closest names first, and focus on the closest
+            searchInBackground(() -> store.searchByNameFuzzy(query, FUZZY_MATCHES), "No name close to " + query);
+        }
+
         if (e.getSource() == ui.create_button) {
             Treasure new_treasure = ui.getNewTreasure();
             if (new_treasure == null) {
@@ -182,16 +274,57 @@ public class Museum implements ActionListener, ListSelectionListener {
                 return;
             }
 
-            // Add the new treasure to the data and reload the entries, then focus on the newly created entry
-            store.treasures.add(new_treasure);
+            // Add the new treasure to the data
+            try {
+                store.add(new_treasure);
+            } catch (DuplicateNumberException error) {
+                ui.notify("Cannot create: " + error.getMessage());
+                return;
+            }
 
-            // reload the entries and focus on the just created entry
-            ui.loadEntries(store.treasures);
+            // add the entry to the list and focus on the just created entry
+            ui.entryAdded(new_treasure);
             ui.focus(new_treasure);
         }
 
     }
 
+    // Run a full text or fuzzy search off the event dispatch thread, since it has to wait for the search indexes if they are still being
+    // built, then show the results (best first) and focus on the best one
+    private void searchInBackground(Supplier<List<Treasure>> search, String nothing_found) {
+
+        stopLiveSearch();
+        ui.showSearchStatus(store.searchIndexesReady() ? "Searching..." : "Building the search index, this can take a few seconds...");
+
+        live_search.searchNow(search, search_results -> {
+
+            ui.clearLiveResults();
+            if (search_results.isEmpty()) {
+                ui.notify(nothing_found);
+                return;
+            }
+
+            ui.showResults(search_results);
+            ui.focus(search_results.get(0));
+
+        });
+
+    }
+
+    // Update the list after the store has been changed by undoing or redoing, and focus on the treasures that were put back (if any)
+    private void showChange(History.Change change) {
+
+        ui.entriesRemoved(change.removed());
+        ui.entriesAdded(change.added());
+
+        if (change.added().isEmpty()) {
+            ui.focus();
+        } else {
+            ui.focus(change.added());
+        }
+
+    }
+
     public void valueChanged(ListSelectionEvent e) {
 
         // Do nothing if this isn't the user's final selection
@@ -202,13 +335,52 @@ public class Museum implements ActionListener, ListSelectionListener {
         if (e.getSource() == ui.list) {
             Treasure selected_value = ui.list.getSelectedValue();
 
-            // If nothing is selected, then focus on nothing, else focus on the selected entry
+            // If nothing is selected, then focus on nothing, else show the (first) selected entry
+            // Don't use focus() here since that would reset the selection to a single entry
             if (selected_value == null) {
                 ui.focus();
             } else {
-                ui.focus(ui.list.getSelectedValue());
+                ui.display(selected_value);
             }
         }
 
     }
+
+    // The search query has been typed into, so search as the user types
+    public void insertUpdate(DocumentEvent e) {
+        queryEdited();
+    }
+
+    public void removeUpdate(DocumentEvent e) {
+        queryEdited();
+    }
+
+    public void changedUpdate(DocumentEvent e) {
+        queryEdited();
+    }
+
+    private void queryEdited() {
+
+        String query = ui.getSearchQuery();
+
+        // Once the query has been cleared, go back to the catalogue
+        if (query.isBlank()) {
+            stopLiveSearch();
+            if (ui.showingResults()) {
+                ui.loadEntries(store);
+            }
+            return;
+        }
+
+        live_search.search(query, ui::showLiveResults);
+
+    }
+
+    // Something else is about to be shown in the list, so stop any search as the user types from adding its results to it
+    private void stopLiveSearch() {
+
+        live_search.cancel();
+        ui.clearLiveResults();
+
+    }
 }
@@ -0,0 +1,551 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// An index of the treasures in order of catalogue number, taken as a number rather than a string (so 288 comes before 1000), for range
+// searches ("everything numbered 1000-5000"), finding the nearest number to one that isn't there, and listing the catalogue in order.
+//
+// It is a B+ tree. The treasures are kept in order in leaves of up to 64, each linked to the ones either side of it, and the branches above
+// them hold the smallest key of each of their children, so finding a number is a binary search on each level, and everything after it is
+// just a walk along the leaves. The keys are primitive longs in arrays, so comparing them doesn't need to look at the strings at all.
+//
+// Catalogue numbers are nearly always numbers, but nothing insists on it. Any that aren't (or are too long to fit in a long) all get the key
+// NOT_A_NUMBER, so they come after every number, and treasures with the same key (e.g. 0288 and 288) are in order of the string.
+//
+// Removing treasures never merges leaves, and empty leaves are just skipped over. Once the leaves are less than a quarter full on average,
+// the whole tree is rebuilt from the treasures left in it.
+final class NumberIndex implements Iterable<Treasure> {
+
+    // The key of every catalogue number that isn't a number
+    public static final long NOT_A_NUMBER = Long.MAX_VALUE;
+
+    // The order the treasures are kept in
+    public static final Comparator<Treasure> ORDER = Comparator.comparingLong((Treasure t) -> key(t.catalogue_number()))
+            .thenComparing(Treasure::catalogue_number);
+
+    // The most entries a node can hold, and how many each node gets when the tree is built all at once (leaving room for a few more before
+    // it has to split)
+    private static final int CAPACITY = 64;
+    private static final int FILL = 48;
+
+    private Node root;
+    private Leaf first;
+    private int size = 0;
+    private int leaves = 0;
+
+    public NumberIndex() {
+
+        first = new Leaf();
+        root = first;
+        leaves = 1;
+
+    }
+
+    // Build an index of the given treasures all at once, which is much faster than adding them one at a time
+    public NumberIndex(Collection<Treasure> treasures) {
+
+        build(treasures);
+
+    }
+
+    // The key of a catalogue number: its value if it is a number, or NOT_A_NUMBER
+    public static long key(String catalogue_number) {
+
+        // Any 18 digits fit in a long
+        int length = catalogue_number.length();
+        if ((length == 0) || (length > 18)) {
+            return NOT_A_NUMBER;
+        }
+
+        long key = 0;
+        for (int i = 0; i < length; i++) {
+            char c = catalogue_number.charAt(i);
+            if ((c < '0') || (c > '9')) {
+                return NOT_A_NUMBER;
+            }
+            key = key * 10 + (c - '0');
+        }
+        return key;
+
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Add a treasure, in place of any treasure with the same catalogue number
+    public void add(Treasure t) {
+
+        String number = t.catalogue_number();
+        Node split = insert(root, key(number), number, t);
+
+        // The root split in two, so the tree gets a level taller
+        if (split != null) {
+            Branch grown = new Branch();
+            grown.put(0, root.keys[0], root.numbers[0], root);
+            grown.put(1, split.keys[0], split.numbers[0], split);
+            root = grown;
+        }
+
+    }
+
+    // Remove a treasure. Nothing happens if a different treasure has its catalogue number.
+    public void remove(Treasure t) {
+
+        String number = t.catalogue_number();
+        long key = key(number);
+        Leaf leaf = leafFor(key, number);
+
+        int index = leaf.lowerBound(key, number);
+        if ((index == leaf.size) || !leaf.treasures[index].equals(t)) {
+            return;
+        }
+
+        leaf.take(index);
+        size--;
+
+        if ((leaves > 1) && (size < leaves * CAPACITY / 4)) {
+            ArrayList<Treasure> left = new ArrayList<>(size);
+            for (Treasure treasure : this) {
+                left.add(treasure);
+            }
+            build(left);
+        }
+
+    }
+
+    // Returns the treasures with catalogue numbers from `from` to `to` (inclusive), in order. Catalogue numbers that aren't numbers are never
+    // in a range.
+    public ArrayList<Treasure> range(long from, long to) {
+
+        ArrayList<Treasure> found = new ArrayList<>();
+        to = Math.min(to, NOT_A_NUMBER - 1);
+
+        Leaf leaf = leafFor(from, "");
+        int index = leaf.lowerBound(from, "");
+        while (leaf != null) {
+            for (; index < leaf.size; index++) {
+                if (leaf.keys[index] > to) {
+                    return found;
+                }
+                found.add(leaf.treasures[index]);
+            }
+            leaf = leaf.next;
+            index = 0;
+        }
+
+        return found;
+
+    }
+
+    // Returns the treasure whose catalogue number is closest to the given number (the smaller of the two if two are as close), or null if
+    // there aren't any catalogue numbers that are numbers
+    public Treasure nearest(long number) {
+
+        Leaf leaf = leafFor(number, "");
+        int index = leaf.lowerBound(number, "");
+
+        // The first treasure numbered at least the number...
+        Leaf after = leaf;
+        int after_index = index;
+        while ((after != null) && (after_index == after.size)) {
+            after = after.next;
+            after_index = 0;
+        }
+        if ((after != null) && (after.keys[after_index] == NOT_A_NUMBER)) {
+            after = null;
+        }
+
+        // ...and the last one numbered less than it
+        Leaf before = leaf;
+        int before_index = index - 1;
+        while ((before != null) && (before_index < 0)) {
+            before = before.previous;
+            before_index = (before == null) ? -1 : before.size - 1;
+        }
+
+        if (before == null) {
+            return (after == null) ? null : after.treasures[after_index];
+        }
+        if (after == null) {
+            return before.treasures[before_index];
+        }
+        return (number - before.keys[before_index] <= after.keys[after_index] - number) ? before.treasures[before_index] : after.treasures[after_index];
+
+    }
+
+    // Walks the treasures in order
+    @Override
+    public Iterator<Treasure> iterator() {
+        return new Walk();
+    }
+
+    // Returns the given treasures in ORDER
+    public static List<Treasure> sorted(Collection<Treasure> treasures) {
+
+        return Arrays.asList(sort(treasures).treasures());
+
+    }
+
+    private record Sorted(long[] keys, Treasure[] treasures) {
+    }
+
+    // Sort the treasures into ORDER with a radix sort of their keys, a byte at a time starting from the lowest. That takes time in
+    // proportion to how many there are, rather than comparing millions of them with each other, and never looks at the strings. Only the
+    // (very few) treasures with the same key are then sorted by their catalogue numbers.
+    private static Sorted sort(Collection<Treasure> treasures) {
+
+        int n = treasures.size();
+        long[] keys = new long[n];
+        Treasure[] sorted = new Treasure[n];
+        int i = 0;
+        for (Treasure t : treasures) {
+            keys[i] = key(t.catalogue_number());
+            sorted[i++] = t;
+        }
+
+        // How many keys have each value of each byte. Keys are never negative, so sorting the bytes as unsigned gets them in order.
+        int[][] counts = new int[8][256];
+        for (long key : keys) {
+            for (int b = 0; b < 8; b++) {
+                counts[b][(int) (key >>> (8 * b)) & 0xFF]++;
+            }
+        }
+
+        long[] other_keys = new long[n];
+        Treasure[] other_treasures = new Treasure[n];
+        for (int b = 0; (b < 8) && (n > 0); b++) {
+
+            // Nothing moves if every key has the same byte here (e.g. the top bytes of small numbers)
+            int[] count = counts[b];
+            if (count[(int) (keys[0] >>> (8 * b)) & 0xFF] == n) {
+                continue;
+            }
+
+            // Where the keys with each value of the byte go, keeping keys with the same value in the order they are in now
+            int[] next = new int[256];
+            for (int value = 1; value < 256; value++) {
+                next[value] = next[value - 1] + count[value - 1];
+            }
+            for (int j = 0; j < n; j++) {
+                int to = next[(int) (keys[j] >>> (8 * b)) & 0xFF]++;
+                other_keys[to] = keys[j];
+                other_treasures[to] = sorted[j];
+            }
+
+            long[] swap_keys = keys;
+            keys = other_keys;
+            other_keys = swap_keys;
+            Treasure[] swap_treasures = sorted;
+            sorted = other_treasures;
+            other_treasures = swap_treasures;
+
+        }
+
+        for (int from = 0; from < n; ) {
+            int to = from + 1;
+            while ((to < n) && (keys[to] == keys[from])) {
+                to++;
+            }
+            if (to - from > 1) {
+                Arrays.sort(sorted, from, to, Comparator.comparing(Treasure::catalogue_number));
+            }
+            from = to;
+        }
+
+        return new Sorted(keys, sorted);
+
+    }
+
+    private void build(Collection<Treasure> treasures) {
+
+        Sorted sorted = sort(treasures);
+
+        // Fill the leaves from left to right...
+        ArrayList<Node> level = new ArrayList<>();
+        Leaf leaf = new Leaf();
+        first = leaf;
+        level.add(leaf);
+        for (int i = 0; i < sorted.keys().length; i++) {
+            if (leaf.size == FILL) {
+                Leaf next = new Leaf();
+                next.previous = leaf;
+                leaf.next = next;
+                leaf = next;
+                level.add(leaf);
+            }
+            Treasure t = sorted.treasures()[i];
+            leaf.put(leaf.size, sorted.keys()[i], t.catalogue_number(), t);
+        }
+        size = sorted.keys().length;
+        leaves = level.size();
+
+        // ...and then each level of branches above them, until there is only one node at the top
+        while (level.size() > 1) {
+            ArrayList<Node> above = new ArrayList<>();
+            Branch branch = null;
+            for (Node child : level) {
+                if ((branch == null) || (branch.size == FILL)) {
+                    branch = new Branch();
+                    above.add(branch);
+                }
+                branch.put(branch.size, child.keys[0], child.numbers[0], child);
+            }
+            level = above;
+        }
+        root = level.get(0);
+
+    }
+
+    // Add a treasure below the given node. Returns the new right half of the node if it had to split, or null.
+    private Node insert(Node node, long key, String number, Treasure t) {
+
+        if (node instanceof Leaf leaf) {
+
+            int index = leaf.lowerBound(key, number);
+            if ((index < leaf.size) && (compare(leaf.keys[index], leaf.numbers[index], key, number) == 0)) {
+                leaf.treasures[index] = t;
+                return null;
+            }
+
+            size++;
+            return putSplitting(leaf, index, key, number, t);
+
+        }
+
+        Branch branch = (Branch) node;
+        int child = branch.childFor(key, number);
+        Node split = insert(branch.children[child], key, number, t);
+        return (split == null) ? null : putSplitting(branch, child + 1, split.keys[0], split.numbers[0], split);
+
+    }
+
+    // Put an entry into a node at the given index, splitting the node in half first if it is full. Returns the new right half if it split.
+    private Node putSplitting(Node node, int index, long key, String number, Object value) {
+
+        if (node.size < CAPACITY) {
+            node.put(index, key, number, value);
+            return null;
+        }
+
+        Node right = node.split();
+        if (node instanceof Leaf) {
+            leaves++;
+        }
+
+        if (index <= node.size) {
+            node.put(index, key, number, value);
+        } else {
+            right.put(index - node.size, key, number, value);
+        }
+        return right;
+
+    }
+
+    // The leaf that the entry with the given key is in, or would be in
+    private Leaf leafFor(long key, String number) {
+
+        Node node = root;
+        while (node instanceof Branch branch) {
+            node = branch.children[branch.childFor(key, number)];
+        }
+        return (Leaf) node;
+
+    }
+
+    // Entries are in order of key, and then catalogue number. Searching with the catalogue number "" finds the first entry with a key.
+    private static int compare(long a_key, String a_number, long b_key, String b_number) {
+
+        return (a_key != b_key) ? Long.compare(a_key, b_key) : a_number.compareTo(b_number);
+
+    }
+
+    private abstract static class Node {
+
+        // The key and catalogue number of each entry in a leaf, or of the smallest entry in each child of a branch when the child was made
+        // (every entry in child i is at least child i's, and less than child i + 1's)
+        final long[] keys = new long[CAPACITY];
+        final String[] numbers = new String[CAPACITY];
+        int size = 0;
+
+        // The treasures of a leaf, or the children of a branch
+        abstract Object[] values();
+
+        abstract Node split();
+
+        // The index of the first entry at least as big as the given one
+        int lowerBound(long key, String number) {
+
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compare(keys[middle], numbers[middle], key, number) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+
+        }
+
+        // Put an entry in at the given index, moving the ones after it along. The node must not be full.
+        void put(int index, long key, String number, Object value) {
+
+            Object[] values = values();
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            System.arraycopy(numbers, index, numbers, index + 1, size - index);
+            System.arraycopy(values, index, values, index + 1, size - index);
+
+            keys[index] = key;
+            numbers[index] = number;
+            values[index] = value;
+            size++;
+
+        }
+
+        // Take out the entry at the given index, moving the ones after it back
+        void take(int index) {
+
+            Object[] values = values();
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(numbers, index + 1, numbers, index, size - index - 1);
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+
+            size--;
+            numbers[size] = null;
+            values[size] = null;
+
+        }
+
+        // Move the top half of the entries into the given (empty) node
+        void moveHalfTo(Node right) {
+
+            int half = size / 2;
+            int moving = size - half;
+            System.arraycopy(keys, half, right.keys, 0, moving);
+            System.arraycopy(numbers, half, right.numbers, 0, moving);
+            System.arraycopy(values(), half, right.values(), 0, moving);
+            right.size = moving;
+
+            Arrays.fill(numbers, half, size, null);
+            Arrays.fill(values(), half, size, null);
+            size = half;
+
+        }
+
+    }
+
+    private static final class Leaf extends Node {
+
+        final Treasure[] treasures = new Treasure[CAPACITY];
+        Leaf previous;
+        Leaf next;
+
+        @Override
+        Object[] values() {
+            return treasures;
+        }
+
+        @Override
+        Node split() {
+
+            Leaf right = new Leaf();
+            moveHalfTo(right);
+
+            right.previous = this;
+            right.next = next;
+            if (next != null) {
+                next.previous = right;
+            }
+            next = right;
+            return right;
+
+        }
+
+    }
+
+    private static final class Branch extends Node {
+
+        final Node[] children = new Node[CAPACITY];
+
+        @Override
+        Object[] values() {
+            return children;
+        }
+
+        @Override
+        Node split() {
+
+            Branch right = new Branch();
+            moveHalfTo(right);
+            return right;
+
+        }
+
+        // The index of the child that the entry with the given key belongs in: the last one whose smallest entry isn't bigger than it. The
+        // first child's key is never looked at, since anything smaller than the second child's goes in the first child (so it may be out of
+        // date, and bigger than some of the entries in it).
+        int childFor(long key, String number) {
+
+            int low = 1;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compare(keys[middle], numbers[middle], key, number) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low - 1;
+
+        }
+
+    }
+
+    // Walks along the leaves, skipping any that are empty
+    private final class Walk implements Iterator<Treasure> {
+
+        private Leaf leaf = first;
+        private int index = 0;
+
+        Walk() {
+            skipEmpty();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return leaf != null;
+        }
+
+        @Override
+        public Treasure next() {
+
+            if (leaf == null) {
+                throw new NoSuchElementException();
+            }
+
+            Treasure t = leaf.treasures[index++];
+            skipEmpty();
+            return t;
+
+        }
+
+        private void skipEmpty() {
+
+            while ((leaf != null) && (index == leaf.size)) {
+                leaf = leaf.next;
+                index = 0;
+            }
+
+        }
+
+    }
+
+}
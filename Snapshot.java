@@ -0,0 +1,221 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+// Thrown when a snapshot file is corrupted or isn't a snapshot at all
+class CorruptDataException extends Exception {
+
+    public CorruptDataException(String message) {
+        super(message);
+    }
+
+}
+
+// A compact binary copy of the data file, which is much faster to load than parsing the text. The text file is still the "real" data
+// (and what other programs should read and write); the snapshot is only ever a copy of it. The format is -
+//
+// int      MAGIC
+// int      VERSION
+// int      number of strings in the dictionary, followed by each string
+// int      number of records, followed by each record as -
+//              string  catalogue number
+//              string  name
+//              string  image path
+//              int     category, as an index into the dictionary
+//              int     country, as an index into the dictionary
+//
+// Strings are length-prefixed UTF-8 (as written by DataOutputStream.writeUTF). There are only a handful of different categories and
+// countries, so storing each of them once in the dictionary and referring to them by index saves a lot of space.
+//
+// This can also be run on its own to convert between the text and binary formats -
+//      java Snapshot to-binary <text file> <snapshot file>
+//      java Snapshot to-text <snapshot file> <text file>
+class Snapshot {
+
+    private static final int MAGIC = 0x41545253; // "ATRS"
+    private static final int VERSION = 1;
+
+    // The fewest bytes a string (just its length) and a record (three empty strings and two codes) can take up in the file
+    private static final int MIN_STRING_BYTES = 2;
+    private static final int MIN_RECORD_BYTES = 3 * MIN_STRING_BYTES + 2 * 4;
+
+    public static void main(String[] args) {
+
+        if (args.length != 3 || !(args[0].equals("to-binary") || args[0].equals("to-text"))) {
+            System.err.println("Usage: java Snapshot to-binary <text file> <snapshot file>");
+            System.err.println("       java Snapshot to-text <snapshot file> <text file>");
+            System.exit(1);
+        }
+
+        try {
+
+            if (args[0].equals("to-binary")) {
+
+                Validator validator = new Validator();
+                ArrayList<Treasure> treasures = new TreasureParser(args[1]).parse(validator);
+
+                // Refuse to convert a file with bad rows in it, rather than silently leaving them out
+                if (validator.hasProblems()) {
+                    validator.report(args[1], System.err);
+                }
+                if (validator.hasErrors()) {
+                    System.exit(1);
+                }
+
+                write(treasures, args[2]);
+
+            } else {
+                writeText(read(args[1]), args[2]);
+            }
+
+        } catch (CorruptDataException e) {
+
+            System.err.println(e.getMessage());
+            System.exit(1);
+
+        } catch (IOException e) {
+
+            System.err.println(e);
+            System.exit(2);
+
+        }
+
+    }
+
+    // Write the given treasures to a snapshot file. The snapshot is written to a temporary file first and then moved into place, so
+    // anything reading the snapshot never sees a half written one.
+    public static void write(Collection<Treasure> treasures, String filename) throws IOException {
+
+        // Build the dictionary of categories and countries
+        ArrayList<String> dictionary = new ArrayList<>();
+        HashMap<String, Integer> codes = new HashMap<>();
+        for (Treasure treasure : treasures) {
+            codes.computeIfAbsent(treasure.category(), k -> { dictionary.add(k); return dictionary.size() - 1; });
+            codes.computeIfAbsent(treasure.country(), k -> { dictionary.add(k); return dictionary.size() - 1; });
+        }
+
+        String temporary_filename = filename + ".tmp";
+
+        // If anything goes wrong (e.g. the disk fills up, or a string is too long for writeUTF) don't leave a half written temporary file
+        // behind
+        try {
+
+            try (FileOutputStream file = new FileOutputStream(temporary_filename)) {
+
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+
+                output.writeInt(dictionary.size());
+                for (String entry : dictionary) {
+                    output.writeUTF(entry);
+                }
+
+                output.writeInt(treasures.size());
+                for (Treasure treasure : treasures) {
+                    output.writeUTF(treasure.catalogue_number());
+                    output.writeUTF(treasure.name());
+                    output.writeUTF(treasure.image_path());
+                    output.writeInt(codes.get(treasure.category()));
+                    output.writeInt(codes.get(treasure.country()));
+                }
+
+                output.flush();
+                file.getFD().sync();
+
+            }
+
+            Files.move(Paths.get(temporary_filename), Paths.get(filename), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(Paths.get(temporary_filename));
+            } catch (IOException not_deleted) {
+                e.addSuppressed(not_deleted);
+            }
+            throw e;
+        }
+
+    }
+
+    // Read all the treasures from a snapshot file
+    public static ArrayList<Treasure> read(String filename) throws IOException, CorruptDataException {
+
+        long length = new File(filename).length();
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 1 << 16))) {
+
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new CorruptDataException(filename + " is not a snapshot file, or was written by a different version");
+            }
+
+            // Check the counts against how big the file is before allocating anything for them, so a corrupted count can't ask for more
+            // memory than there is
+            int dictionary_size = input.readInt();
+            if (dictionary_size < 0 || (long) dictionary_size * MIN_STRING_BYTES > length) {
+                throw new CorruptDataException("Corrupted data in " + filename + ": Impossible number of categories and countries");
+            }
+
+            String[] dictionary = new String[dictionary_size];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = input.readUTF();
+            }
+
+            int count = input.readInt();
+            if (count < 0 || (long) count * MIN_RECORD_BYTES > length) {
+                throw new CorruptDataException("Corrupted data in " + filename + ": Impossible number of records");
+            }
+
+            ArrayList<Treasure> treasures = new ArrayList<>(count);
+
+            for (int i = 0; i < count; i++) {
+                String catalogue_number = input.readUTF();
+                String name = input.readUTF();
+                String image_path = input.readUTF();
+                int category = input.readInt();
+                int country = input.readInt();
+
+                if (category < 0 || category >= dictionary.length || country < 0 || country >= dictionary.length) {
+                    throw new CorruptDataException("Corrupted data in " + filename + ": Unknown category or country");
+                }
+
+                treasures.add(new Treasure(name, catalogue_number, dictionary[category], image_path, dictionary[country]));
+            }
+
+            return treasures;
+
+        } catch (EOFException e) {
+
+            throw new CorruptDataException("Corrupted data in " + filename + ": The file is truncated");
+
+        } catch (UTFDataFormatException e) {
+
+            throw new CorruptDataException("Corrupted data in " + filename + ": A string is not valid UTF-8");
+
+        }
+
+    }
+
+    // Write the given treasures to a file in the (text) data format
+    public static void writeText(Collection<Treasure> treasures, String filename) throws IOException {
+
+        try (BufferedWriter output = Files.newBufferedWriter(Paths.get(filename), StandardCharsets.UTF_8)) {
+
+            StringBuilder line = new StringBuilder();
+            for (Treasure treasure : treasures) {
+                line.setLength(0);
+                DataStore.appendRecord(line, treasure).append('\n');
+                output.append(line);
+            }
+
+        }
+
+    }
+
+}
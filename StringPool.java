@@ -0,0 +1,84 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Hands out a single shared instance of each distinct string it is given, and a small integer code for it. Fields like category and
+// country only have a handful of distinct values across the whole catalogue, so sharing them saves a copy per treasure and means two
+// values can be compared with == (or by their codes) instead of comparing characters.
+//
+// This is safe to use from several threads at once, since treasures are created by the parser's worker threads.
+class StringPool {
+
+    private ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+
+    // values[code] is the shared instance of the string with that code
+    private volatile String[] values = new String[16];
+    private int size = 0;
+
+    // Return the shared instance of the given string
+    public String intern(String value) {
+
+        // Get the code first: values[code(value)] would read the values array before code() has had a chance to grow it
+        int code = code(value);
+        return values[code];
+
+    }
+
+    // Return the code of the given string, giving it a new one if it hasn't been seen before
+    public int code(String value) {
+
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+
+        // Only new strings need the lock, and there are very few of those
+        synchronized (this) {
+
+            code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            values[size] = value;
+            codes.put(value, size);
+            return size++;
+
+        }
+
+    }
+
+    // Return the shared instance of the given string, or null if it hasn't been seen before. Unlike intern, this never adds it to the pool,
+    // so it is the one to use for strings that only come from e.g. a search and may not be in any treasure.
+    public String lookup(String value) {
+
+        int code = find(value);
+        return (code == -1) ? null : values[code];
+
+    }
+
+    // Return the code of the given string, or -1 if it hasn't been seen before. Unlike code, this never adds it to the pool.
+    public int find(String value) {
+
+        return codes.getOrDefault(value, -1);
+
+    }
+
+    // Return the string with the given code
+    public String get(int code) {
+
+        return values[code];
+
+    }
+
+    // Return how many distinct strings have been seen
+    public int size() {
+
+        return size;
+
+    }
+
+}
@@ -0,0 +1,330 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// An inverted index of the words in every field of the treasures, for full text search. Each treasure is given a document number, and each
+// word has a posting list of the documents it appears in, in document order, so that the documents with several words in them can be found
+// by walking the words' posting lists together instead of looking at every treasure.
+//
+// Words are split on anything that isn't a letter or digit, lower-cased, and stemmed (see stem) so that "Boxes" finds "box". Words in the
+// name count for more than words in the category or country, and those count for more than words in the image's file name. Results are
+// ranked by the sum over the query's words of how much the word counts in that treasure times how rare the word is (roughly tf-idf).
+//
+// A query is a list of words, all of which must appear (AND). If the words are separated by OR, any of them may appear instead, e.g.
+//      carved box          treasures with both "carved" and "box" in them
+//      clock OR watch      treasures with either
+//
+// Removing a treasure just marks its document as dead and leaves it in the posting lists, where searches skip it. Once half the documents
+// are dead the whole index is rebuilt from the live ones.
+class TextIndex {
+
+    private static final int NAME_WEIGHT = 3;
+    private static final int CATEGORY_WEIGHT = 2;
+    private static final int COUNTRY_WEIGHT = 2;
+    private static final int IMAGE_WEIGHT = 1;
+
+    // Each posting is packed into an int as the document number followed by the word's weight in it (which is at most 15)
+    private static final int WEIGHT_BITS = 4;
+    private static final int MAX_WEIGHT = (1 << WEIGHT_BITS) - 1;
+
+    // Treasures by document number, with null for dead documents
+    private ArrayList<Treasure> documents = new ArrayList<>();
+    private int dead = 0;
+
+    // Document number of each live treasure, by catalogue number
+    private HashMap<String, Integer> document_numbers = new HashMap<>();
+
+    private HashMap<String, Postings> postings = new HashMap<>();
+
+    private static final class Postings {
+
+        int[] entries = new int[2];
+        int size = 0;
+
+        // Documents are only ever added with a bigger number than any before, so the list stays sorted
+        void add(int entry) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            entries[size++] = entry;
+        }
+
+        // The index of the first posting for the given document or a later one, searching from the given index
+        int seek(int from, int document) {
+            int index = Arrays.binarySearch(entries, from, size, document << WEIGHT_BITS);
+            return (index >= 0) ? index : -(index + 1);
+        }
+
+    }
+
+    public void add(Treasure t) {
+
+        int document = documents.size();
+        documents.add(t);
+        document_numbers.put(t.catalogue_number(), document);
+
+        for (Map.Entry<String, Integer> word : words(t).entrySet()) {
+            postings.computeIfAbsent(word.getKey(), k -> new Postings()).add((document << WEIGHT_BITS) | word.getValue());
+        }
+
+    }
+
+    public void remove(Treasure t) {
+
+        Integer document = document_numbers.get(t.catalogue_number());
+        if ((document == null) || !documents.get(document).equals(t)) {
+            return;
+        }
+
+        document_numbers.remove(t.catalogue_number());
+        documents.set(document, null);
+        dead++;
+
+        if (dead > documents.size() / 2) {
+            rebuild();
+        }
+
+    }
+
+    private void rebuild() {
+
+        ArrayList<Treasure> live = new ArrayList<>(documents.size() - dead);
+        for (Treasure t : documents) {
+            if (t != null) {
+                live.add(t);
+            }
+        }
+
+        documents = new ArrayList<>(live.size());
+        document_numbers = new HashMap<>();
+        postings = new HashMap<>();
+        dead = 0;
+
+        for (Treasure t : live) {
+            add(t);
+        }
+
+    }
+
+    // Returns the (at most) limit treasures that best match the query, best first
+    public List<Treasure> search(String query, int limit) {
+
+        // Split the query into words, and find out whether it is an OR query
+        boolean any = false;
+        ArrayList<String> words = new ArrayList<>();
+        for (String part : query.trim().split("\\s+")) {
+            if (part.equals("OR")) {
+                any = true;
+            } else {
+                words.addAll(tokenize(part));
+            }
+        }
+
+        ArrayList<Postings> lists = new ArrayList<>();
+        for (String word : words) {
+            Postings list = postings.get(word);
+            if (list != null) {
+                lists.add(list);
+            } else if (!any) {
+                // Nothing can have all of the words in it if one of them isn't anywhere
+                return new ArrayList<>();
+            }
+        }
+
+        if (lists.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // The idf of each word: rare words say much more about a treasure than words that are in nearly all of them
+        double[] rarity = new double[lists.size()];
+        int live = documents.size() - dead;
+        for (int i = 0; i < rarity.length; i++) {
+            rarity[i] = Math.log(1 + (double) live / Math.max(1, lists.get(i).size));
+        }
+
+        // Keep the best limit hits so far, with the worst of them on top so it can be dropped when a better one comes along
+        PriorityQueue<Hit> best = new PriorityQueue<>(Comparator.comparingDouble(Hit::score).thenComparing(Hit::document, Comparator.reverseOrder()));
+        if (any) {
+            unite(lists, rarity, best, limit);
+        } else {
+            intersect(lists, rarity, best, limit);
+        }
+
+        Treasure[] results = new Treasure[best.size()];
+        for (int i = results.length - 1; i >= 0; i--) {
+            results[i] = documents.get(best.poll().document());
+        }
+        return Arrays.asList(results);
+
+    }
+
+    private record Hit(int document, double score) {
+    }
+
+    // Find the documents with every word in them. Walk the shortest posting list, and jump ahead in each of the others with a binary search
+    // to where that document would be, so this takes time proportional to the rarest word rather than the most common one.
+    private void intersect(ArrayList<Postings> lists, double[] rarity, PriorityQueue<Hit> best, int limit) {
+
+        Integer[] order = new Integer[lists.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> lists.get(i).size));
+
+        Postings shortest = lists.get(order[0]);
+        int[] positions = new int[lists.size()];
+
+        candidates:
+        for (int p = 0; p < shortest.size; p++) {
+
+            int document = shortest.entries[p] >>> WEIGHT_BITS;
+            if (documents.get(document) == null) {
+                continue;
+            }
+
+            double score = (shortest.entries[p] & MAX_WEIGHT) * rarity[order[0]];
+            for (int o = 1; o < order.length; o++) {
+                int i = order[o];
+                Postings list = lists.get(i);
+                positions[i] = list.seek(positions[i], document);
+                if ((positions[i] == list.size) || ((list.entries[positions[i]] >>> WEIGHT_BITS) != document)) {
+                    continue candidates;
+                }
+                score += (list.entries[positions[i]] & MAX_WEIGHT) * rarity[i];
+            }
+
+            keep(best, new Hit(document, score), limit);
+
+        }
+
+    }
+
+    // Find the documents with any of the words in them, by merging the posting lists in document order. Documents with more of the words in
+    // them get a higher score.
+    private void unite(ArrayList<Postings> lists, double[] rarity, PriorityQueue<Hit> best, int limit) {
+
+        int[] positions = new int[lists.size()];
+
+        while (true) {
+
+            // The next document in any of the lists
+            int document = Integer.MAX_VALUE;
+            for (int i = 0; i < positions.length; i++) {
+                Postings list = lists.get(i);
+                if (positions[i] < list.size) {
+                    document = Math.min(document, list.entries[positions[i]] >>> WEIGHT_BITS);
+                }
+            }
+            if (document == Integer.MAX_VALUE) {
+                return;
+            }
+
+            double score = 0;
+            for (int i = 0; i < positions.length; i++) {
+                Postings list = lists.get(i);
+                if ((positions[i] < list.size) && ((list.entries[positions[i]] >>> WEIGHT_BITS) == document)) {
+                    score += (list.entries[positions[i]] & MAX_WEIGHT) * rarity[i];
+                    positions[i]++;
+                }
+            }
+
+            if (documents.get(document) != null) {
+                keep(best, new Hit(document, score), limit);
+            }
+
+        }
+
+    }
+
+    private static void keep(PriorityQueue<Hit> best, Hit hit, int limit) {
+
+        if (best.size() < limit) {
+            best.add(hit);
+        } else if (best.comparator().compare(hit, best.peek()) > 0) {
+            best.poll();
+            best.add(hit);
+        }
+
+    }
+
+    // Every word in a treasure, with how much it counts for (the total weight of the fields it is in)
+    private static HashMap<String, Integer> words(Treasure t) {
+
+        HashMap<String, Integer> words = new HashMap<>();
+        addWords(words, t.name(), NAME_WEIGHT);
+        addWords(words, t.category(), CATEGORY_WEIGHT);
+        addWords(words, t.country(), COUNTRY_WEIGHT);
+        addWords(words, fileName(t.image_path()), IMAGE_WEIGHT);
+        return words;
+
+    }
+
+    private static void addWords(HashMap<String, Integer> words, String text, int weight) {
+
+        for (String word : tokenize(text)) {
+            words.merge(word, weight, (a, b) -> Math.min(MAX_WEIGHT, a + b));
+        }
+
+    }
+
+    // Only the file name (without the extension) of an image path says anything about the treasure: the folder and the extension are the
+    // same for nearly all of them
+    private static String fileName(String path) {
+
+        int start = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1;
+        int end = path.lastIndexOf('.');
+        return path.substring(start, (end > start) ? end : path.length());
+
+    }
+
+    // Split text into lower-cased, stemmed words
+    static ArrayList<String> tokenize(String text) {
+
+        ArrayList<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+
+        for (int i = 0; i <= text.length(); i++) {
+            char c = (i < text.length()) ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                words.add(stem(word.toString()));
+                word.setLength(0);
+            }
+        }
+
+        return words;
+
+    }
+
+    // A very light stemmer that just takes the common English endings off, e.g. boxes -> box, pottery -> pottery, carved -> carv,
+    // carving -> carv. The stems don't have to be real words, only the same for the different forms of a word.
+    static String stem(String word) {
+
+        int length = word.length();
+
+        if ((length > 4) && word.endsWith("ies")) {
+            return word.substring(0, length - 3) + "y";
+        }
+        if ((length > 4) && (word.endsWith("ches") || word.endsWith("shes") || word.endsWith("sses") || word.endsWith("xes"))) {
+            return word.substring(0, length - 2);
+        }
+        if ((length > 5) && word.endsWith("ing")) {
+            return word.substring(0, length - 3);
+        }
+        if ((length > 4) && word.endsWith("ed")) {
+            return word.substring(0, length - 2);
+        }
+        if ((length > 3) && word.endsWith("s") && !word.endsWith("ss") && !word.endsWith("us")) {
+            return word.substring(0, length - 1);
+        }
+
+        return word;
+
+    }
+
+}
@@ -0,0 +1,158 @@
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+// Makes small copies of the treasure images that fit in the drawing panel, and keeps them on disk so each full size image only ever has to
+// be decoded and scaled once. Even then, only as many pixels as are needed are decoded (see decode).
+//
+// Thumbnails are stored in the cache directory under a name made from the image's path, last modified time and size, so an image that
+// changes gets a new thumbnail rather than the stale one.
+class Thumbnails {
+
+    private File cache_directory;
+    private int size;
+
+    public Thumbnails(String cache_directory, int size) {
+
+        this.cache_directory = new File(cache_directory);
+        this.size = size;
+
+    }
+
+    // Returns the thumbnail for the image at the given path, making it if needed. Returns null if the image can't be read.
+    public BufferedImage load(String path) {
+
+        File image = new File(path);
+        if (!image.isFile()) {
+            return null;
+        }
+
+        File thumbnail = new File(cache_directory, path.replaceAll("[^A-Za-z0-9]", "_") + "-" + image.lastModified() + "-" + image.length() + ".png");
+
+        // ImageIO can throw unchecked exceptions on a corrupted image as well as IOExceptions
+        try {
+
+            if (thumbnail.isFile()) {
+                BufferedImage cached = ImageIO.read(thumbnail);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+
+            BufferedImage decoded = decode(image, size);
+            if (decoded == null) {
+                return null;
+            }
+
+            BufferedImage scaled = scale(decoded, size);
+            save(scaled, thumbnail);
+            return scaled;
+
+        } catch (IOException | RuntimeException e) {
+
+            return null;
+
+        }
+
+    }
+
+    // Decode the image, skipping pixels while decoding so that it comes out no more than about twice the given size. This is much faster
+    // (and uses much less memory) than decoding every pixel of a large photo just to scale most of them away.
+    // Returns null if there is no reader for the image's format.
+    public static BufferedImage decode(File image, int size) throws IOException {
+
+        try (ImageInputStream input = ImageIO.createImageInputStream(image)) {
+
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+
+                reader.setInput(input, true, true);
+
+                // The header says how big the image is without decoding any of it. Keep twice the wanted size so that the final scale
+                // still has some pixels to smooth over.
+                int longest_side = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int subsampling = Math.max(1, longest_side / (size * 2));
+
+                ImageReadParam parameters = reader.getDefaultReadParam();
+                parameters.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, parameters);
+
+            } finally {
+                reader.dispose();
+            }
+
+        }
+
+    }
+
+    // Write the thumbnail to disk. Failing to isn't fatal, it just means it will be made again next time.
+    private void save(BufferedImage scaled, File thumbnail) {
+
+        try {
+            cache_directory.mkdirs();
+            File temporary = new File(cache_directory, thumbnail.getName() + ".tmp");
+            ImageIO.write(scaled, "png", temporary);
+            Files.move(temporary.toPath(), thumbnail.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("WARNING: Could not save thumbnail " + thumbnail + ": " + e);
+        }
+
+    }
+
+    // Scale the image down (keeping its shape) so that it fits in a size x size square. Images that already fit are left alone.
+    //
+    // Scaling down a lot in one go with bilinear filtering skips most of the pixels and looks bad, so the image is halved repeatedly
+    // until it is less than twice the wanted size, and only then scaled to the exact size.
+    public static BufferedImage scale(BufferedImage image, int size) {
+
+        double ratio = Math.min((double) size / image.getWidth(), (double) size / image.getHeight());
+        if (ratio >= 1) {
+            return image;
+        }
+
+        int target_width = Math.max(1, (int) Math.round(image.getWidth() * ratio));
+        int target_height = Math.max(1, (int) Math.round(image.getHeight() * ratio));
+
+        BufferedImage scaled = image;
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        do {
+            width = Math.max(target_width, width / 2);
+            height = Math.max(target_height, height / 2);
+            scaled = resize(scaled, width, height);
+        } while (width != target_width || height != target_height);
+
+        return scaled;
+
+    }
+
+    private static BufferedImage resize(BufferedImage image, int width, int height) {
+
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage resized = new BufferedImage(width, height, type);
+        Graphics2D graphics = resized.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return resized;
+
+    }
+
+}
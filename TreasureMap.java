@@ -0,0 +1,457 @@
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// An immutable set of treasures keyed by catalogue number (at most one treasure per number). "Changing" it makes a new map and leaves the
+// old one as it was, so a reader can hold on to a map for as long as it likes without locking anything and without it changing under it.
+//
+// It is a hash array mapped trie: a tree where each level uses the next 5 bits of the key's hash to pick one of up to 32 children, and each
+// node only stores the children it actually has (a bitmap says which). A change only copies the handful of nodes on the path from the root
+// to the key, and the new map shares every other node with the old one, so it costs O(log32 n) rather than a copy of the whole set.
+//
+// Loading builds a map from millions of treasures at once, where copying a path for every one of them would be wasteful, so a Builder is
+// allowed to change the nodes it made itself in place. Nodes remember which builder made them (edit), and nothing else can change them.
+final class TreasureMap extends AbstractCollection<Treasure> {
+
+    public static final TreasureMap EMPTY = new TreasureMap(null, 0);
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    // The root is null for an empty map
+    private final Node root;
+    private final int size;
+
+    private TreasureMap(Node root, int size) {
+
+        this.root = root;
+        this.size = size;
+
+    }
+
+    // Returns the treasure with the given catalogue number, or null if there isn't one
+    public Treasure get(String catalogue_number) {
+
+        return (root == null) ? null : root.get(catalogue_number, hash(catalogue_number), 0);
+
+    }
+
+    // Returns a map with the given treasure in it, in place of any treasure with the same catalogue number
+    public TreasureMap with(Treasure t) {
+
+        Box replaced = new Box();
+        Node changed = put(root, null, t, replaced);
+        return (changed == root) ? this : new TreasureMap(changed, (replaced.treasure == null) ? size + 1 : size);
+
+    }
+
+    // Returns a map without the given treasure. Nothing changes if the treasure with its catalogue number is a different one.
+    public TreasureMap without(Treasure t) {
+
+        if (root == null) {
+            return this;
+        }
+
+        Node changed = root.remove(null, t, hash(t.catalogue_number()), 0);
+        return (changed == root) ? this : new TreasureMap(changed, size - 1);
+
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return (o instanceof Treasure t) && t.equals(get(t.catalogue_number()));
+    }
+
+    @Override
+    public Iterator<Treasure> iterator() {
+        return new Walk(root);
+    }
+
+    private static Node put(Node root, Object edit, Treasure t, Box replaced) {
+
+        int hash = hash(t.catalogue_number());
+        return (root == null) ? new Branch(edit, 1 << (hash & MASK), new Object[] { t }) : root.put(edit, t, hash, 0, replaced);
+
+    }
+
+    // The trie uses the lowest bits of the hash first, so fold the high bits into them (as HashMap does) and let a difference anywhere in
+    // the hash code split treasures near the root
+    private static int hash(String catalogue_number) {
+
+        int h = catalogue_number.hashCode();
+        return h ^ (h >>> 16);
+
+    }
+
+    // For finding out which treasure (if any) a put replaced
+    private static final class Box {
+        Treasure treasure;
+    }
+
+    // Adds treasures to a map in place, for building a big map quickly. The map it builds is as immutable as any other.
+    public static final class Builder {
+
+        private Node root;
+        private int size;
+        private Object edit = new Object();
+
+        public Builder() {
+
+            this(EMPTY);
+
+        }
+
+        // Start from a copy of the given map. The map itself isn't changed.
+        public Builder(TreasureMap map) {
+
+            this.root = map.root;
+            this.size = map.size;
+
+        }
+
+        // Add a treasure, in place of any treasure with the same catalogue number. Returns the replaced treasure, or null if there wasn't one.
+        public Treasure put(Treasure t) {
+
+            Box replaced = new Box();
+            root = TreasureMap.put(root, edit, t, replaced);
+            if (replaced.treasure == null) {
+                size++;
+            }
+            return replaced.treasure;
+
+        }
+
+        // The builder can carry on being used afterwards, but it has to copy nodes again from now on so that the map stays as it is
+        public TreasureMap build() {
+
+            edit = new Object();
+            return new TreasureMap(root, size);
+
+        }
+
+    }
+
+    // A node's slots are either treasures or child nodes
+    private abstract static class Node {
+
+        // The builder allowed to change this node in place, if any
+        final Object edit;
+        Object[] slots;
+
+        Node(Object edit, Object[] slots) {
+
+            this.edit = edit;
+            this.slots = slots;
+
+        }
+
+        abstract Treasure get(String catalogue_number, int hash, int shift);
+
+        // These return the changed node (which is this node if nothing changed). remove returns null if the node is left empty.
+        abstract Node put(Object edit, Treasure t, int hash, int shift, Box replaced);
+        abstract Node remove(Object edit, Treasure t, int hash, int shift);
+
+        boolean editable(Object edit) {
+            return (edit != null) && (edit == this.edit);
+        }
+
+    }
+
+    // A node with a child for each different value of the next 5 bits of the hash
+    private static final class Branch extends Node {
+
+        int bitmap;
+
+        Branch(Object edit, int bitmap, Object[] slots) {
+
+            super(edit, slots);
+            this.bitmap = bitmap;
+
+        }
+
+        @Override
+        Treasure get(String catalogue_number, int hash, int shift) {
+
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+
+            Object slot = slots[index(bit)];
+            if (slot instanceof Node node) {
+                return node.get(catalogue_number, hash, shift + BITS);
+            }
+
+            Treasure t = (Treasure) slot;
+            return t.catalogue_number().equals(catalogue_number) ? t : null;
+
+        }
+
+        @Override
+        Node put(Object edit, Treasure t, int hash, int shift, Box replaced) {
+
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int index = index(bit);
+
+            // Nothing with these bits yet, so the treasure gets a slot of its own
+            if ((bitmap & bit) == 0) {
+
+                Object[] grown = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, grown, 0, index);
+                grown[index] = t;
+                System.arraycopy(slots, index, grown, index + 1, slots.length - index);
+
+                if (editable(edit)) {
+                    bitmap |= bit;
+                    slots = grown;
+                    return this;
+                }
+                return new Branch(edit, bitmap | bit, grown);
+
+            }
+
+            Object slot = slots[index];
+            if (slot instanceof Node node) {
+                Node changed = node.put(edit, t, hash, shift + BITS, replaced);
+                return (changed == node) ? this : set(edit, index, changed);
+            }
+
+            Treasure existing = (Treasure) slot;
+            if (existing.catalogue_number().equals(t.catalogue_number())) {
+                replaced.treasure = existing;
+                return (existing == t) ? this : set(edit, index, t);
+            }
+
+            // Another treasure has the same bits here, so push both of them down a level
+            return set(edit, index, pair(edit, existing, hash(existing.catalogue_number()), t, hash, shift + BITS));
+
+        }
+
+        @Override
+        Node remove(Object edit, Treasure t, int hash, int shift) {
+
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+
+            int index = index(bit);
+            Object slot = slots[index];
+            if (slot instanceof Node node) {
+                Node changed = node.remove(edit, t, hash, shift + BITS);
+                if (changed == node) {
+                    return this;
+                }
+                return (changed == null) ? drop(edit, bit, index) : set(edit, index, changed);
+            }
+
+            return slot.equals(t) ? drop(edit, bit, index) : this;
+
+        }
+
+        // Where the slot for the given bit is: there is a slot for every bit set in the bitmap, in order
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private Node set(Object edit, int index, Object value) {
+
+            if (editable(edit)) {
+                slots[index] = value;
+                return this;
+            }
+
+            Object[] copy = slots.clone();
+            copy[index] = value;
+            return new Branch(edit, bitmap, copy);
+
+        }
+
+        private Node drop(Object edit, int bit, int index) {
+
+            if (slots.length == 1) {
+                return null;
+            }
+
+            Object[] shrunk = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, shrunk, 0, index);
+            System.arraycopy(slots, index + 1, shrunk, index, shrunk.length - index);
+
+            if (editable(edit)) {
+                bitmap ^= bit;
+                slots = shrunk;
+                return this;
+            }
+            return new Branch(edit, bitmap ^ bit, shrunk);
+
+        }
+
+    }
+
+    // Make a node holding two treasures with different catalogue numbers, whose hashes are the same up to the given shift
+    private static Node pair(Object edit, Treasure a, int a_hash, Treasure b, int b_hash, int shift) {
+
+        // Every bit of the hash has been used up, so they really do have the same hash
+        if (shift >= Integer.SIZE) {
+            return new Collision(edit, new Object[] { a, b });
+        }
+
+        int a_bit = 1 << ((a_hash >>> shift) & MASK);
+        int b_bit = 1 << ((b_hash >>> shift) & MASK);
+
+        if (a_bit == b_bit) {
+            return new Branch(edit, a_bit, new Object[] { pair(edit, a, a_hash, b, b_hash, shift + BITS) });
+        }
+
+        // The slots are in order of bit, and the top bit makes an int negative
+        return new Branch(edit, a_bit | b_bit, (Integer.compareUnsigned(a_bit, b_bit) < 0) ? new Object[] { a, b } : new Object[] { b, a });
+
+    }
+
+    // The treasures whose catalogue numbers have exactly the same hash. There are hardly ever more than two, so they are just searched.
+    private static final class Collision extends Node {
+
+        Collision(Object edit, Object[] slots) {
+
+            super(edit, slots);
+
+        }
+
+        @Override
+        Treasure get(String catalogue_number, int hash, int shift) {
+
+            int index = find(catalogue_number);
+            return (index < 0) ? null : (Treasure) slots[index];
+
+        }
+
+        @Override
+        Node put(Object edit, Treasure t, int hash, int shift, Box replaced) {
+
+            int index = find(t.catalogue_number());
+
+            Object[] changed;
+            if (index < 0) {
+                changed = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, changed, 0, slots.length);
+                changed[slots.length] = t;
+            } else {
+                replaced.treasure = (Treasure) slots[index];
+                if (slots[index] == t) {
+                    return this;
+                }
+                changed = slots.clone();
+                changed[index] = t;
+            }
+
+            if (editable(edit)) {
+                slots = changed;
+                return this;
+            }
+            return new Collision(edit, changed);
+
+        }
+
+        @Override
+        Node remove(Object edit, Treasure t, int hash, int shift) {
+
+            int index = find(t.catalogue_number());
+            if ((index < 0) || !slots[index].equals(t)) {
+                return this;
+            }
+
+            if (slots.length == 1) {
+                return null;
+            }
+
+            Object[] shrunk = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, shrunk, 0, index);
+            System.arraycopy(slots, index + 1, shrunk, index, shrunk.length - index);
+            return new Collision(edit, shrunk);
+
+        }
+
+        private int find(String catalogue_number) {
+
+            for (int i = 0; i < slots.length; i++) {
+                if (((Treasure) slots[i]).catalogue_number().equals(catalogue_number)) {
+                    return i;
+                }
+            }
+            return -1;
+
+        }
+
+    }
+
+    // Walks the tree depth first, keeping the slots of each node on the way down to the current one and how far through them it is
+    private static final class Walk implements Iterator<Treasure> {
+
+        // 7 levels of branches use up the 32 bits of the hash, and there may be a collision node below them
+        private final Object[][] path = new Object[8][];
+        private final int[] positions = new int[8];
+        private int depth;
+        private Treasure next;
+
+        Walk(Node root) {
+
+            if (root == null) {
+                depth = -1;
+            } else {
+                path[0] = root.slots;
+            }
+            advance();
+
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Treasure next() {
+
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+
+            Treasure t = next;
+            advance();
+            return t;
+
+        }
+
+        private void advance() {
+
+            next = null;
+            while (depth >= 0) {
+
+                Object[] slots = path[depth];
+                if (positions[depth] == slots.length) {
+                    depth--;
+                    continue;
+                }
+
+                Object slot = slots[positions[depth]++];
+                if (slot instanceof Node node) {
+                    depth++;
+                    path[depth] = node.slots;
+                    positions[depth] = 0;
+                } else {
+                    next = (Treasure) slot;
+                    return;
+                }
+
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,307 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+// Reads the data file (see DataStore for the format) by memory mapping it and scanning the raw bytes for tabs and newlines.
+// This avoids the BufferedReader -> String -> split() -> substring chain of copies; the only Strings made are the five fields of each
+// record that actually end up in a Treasure.
+//
+// A single mapping can't be bigger than 2GB, so the file is mapped and parsed in chunks. Chunk boundaries are moved forward to just after
+// the next newline so that no record is ever split between two chunks. Since records are independent, the chunks can also be parsed in
+// parallel on a ForkJoinPool (see parseParallel).
+//
+// Rows are checked as they are parsed. Bad rows are skipped and reported to the Validator passed in, rather than stopping the parse, so
+// it is up to the caller what to do about them.
+class TreasureParser {
+
+    // The most bytes of the file to map (and parse) at once
+    public static final long CHUNK_SIZE = 64 * 1024 * 1024;
+
+    // When parsing in parallel, chunks are made smaller so every worker has something to do, but not smaller than this
+    public static final long MIN_CHUNK_SIZE = 1024 * 1024;
+
+    private static final byte TAB = '\t';
+    private static final byte NEWLINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private String filename;
+
+    public TreasureParser(String filename) {
+
+        this.filename = filename;
+
+    }
+
+    // Parse the whole file, chunk by chunk, on the calling thread
+    public ArrayList<Treasure> parse(Validator validator) throws IOException {
+
+        ArrayList<Treasure> treasures = new ArrayList<>();
+        parse(validator, treasures::add);
+        return treasures;
+
+    }
+
+    // Parse the whole file, chunk by chunk, on the calling thread, handing each treasure to the consumer in file order. Only one chunk of
+    // treasures is ever held here at once, so a file with more treasures than would fit in memory as Treasures can still be read into
+    // something more compact (see ColumnStore).
+    public void parse(Validator validator, Consumer<Treasure> consumer) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+
+            long[] boundaries = chunkBoundaries(channel, CHUNK_SIZE);
+
+            for (int i = 0; i < boundaries.length - 1; i++) {
+                parseRange(channel, boundaries[i], boundaries[i + 1], validator).forEach(consumer);
+            }
+
+        }
+
+    }
+
+    // Parse the whole file using the given number of worker threads. The treasures come back in the same order as parse() would give them,
+    // and the validator ends up with the same problems (and line numbers) as parse() would give it.
+    public ArrayList<Treasure> parseParallel(int parallelism, Validator validator) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+
+            // Aim for a few chunks per worker so that one slow chunk doesn't hold everything up
+            long chunk_size = Math.max(MIN_CHUNK_SIZE, Math.min(CHUNK_SIZE, channel.size() / (parallelism * 4L)));
+            long[] boundaries = chunkBoundaries(channel, chunk_size);
+
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                Chunk parsed = pool.invoke(new ParseTask(channel, boundaries, 0, boundaries.length - 1, validator));
+                validator.merge(parsed.validator);
+                return parsed.treasures;
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdown();
+            }
+
+        }
+
+    }
+
+    // The treasures in one or more chunks of the file, and the problems found in them (with line numbers counted from the first chunk)
+    private static class Chunk {
+
+        private ArrayList<Treasure> treasures;
+        private Validator validator;
+
+        public Chunk(ArrayList<Treasure> treasures, Validator validator) {
+
+            this.treasures = treasures;
+            this.validator = validator;
+
+        }
+
+    }
+
+    // Parses the chunks first (inclusive) to last (exclusive) by splitting them in half until there is only one left
+    private class ParseTask extends RecursiveTask<Chunk> {
+
+        private FileChannel channel;
+        private long[] boundaries;
+        private int first;
+        private int last;
+        private Validator validator;
+
+        public ParseTask(FileChannel channel, long[] boundaries, int first, int last, Validator validator) {
+
+            this.channel = channel;
+            this.boundaries = boundaries;
+            this.first = first;
+            this.last = last;
+            this.validator = validator;
+
+        }
+
+        protected Chunk compute() {
+
+            if (last - first <= 1) {
+                // RecursiveTask.compute() can't throw checked exceptions
+                try {
+                    Validator chunk_validator = validator.forChunk();
+                    return new Chunk(parseRange(channel, boundaries[first], boundaries[last], chunk_validator), chunk_validator);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            int middle = (first + last) / 2;
+            ParseTask right = new ParseTask(channel, boundaries, middle, last, validator);
+            right.fork();
+
+            Chunk left = new ParseTask(channel, boundaries, first, middle, validator).compute();
+            Chunk rest = right.join();
+
+            // The right half's line numbers carry on from the end of the left half
+            left.treasures.addAll(rest.treasures);
+            left.validator.merge(rest.validator);
+            return left;
+
+        }
+
+    }
+
+    // Split the file into ranges of roughly chunk_size bytes that each start at the beginning of a line.
+    // Range i is [boundaries[i], boundaries[i + 1])
+    public long[] chunkBoundaries(FileChannel channel, long chunk_size) throws IOException {
+
+        long size = channel.size();
+        ArrayList<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+
+        long position = chunk_size;
+        ByteBuffer one_byte = ByteBuffer.allocate(1);
+
+        while (position < size) {
+
+            // Move forward to just past the next newline so the range ends on a whole line
+            while (position < size) {
+                one_byte.clear();
+                channel.read(one_byte, position);
+                position++;
+                if (one_byte.get(0) == NEWLINE) {
+                    break;
+                }
+            }
+
+            if (position < size) {
+                boundaries.add(position);
+            }
+            position += chunk_size;
+
+        }
+
+        boundaries.add(size);
+
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+
+    }
+
+    // Parse all the records in the given byte range of the file. The range must start at the beginning of a line. Bad rows are reported to
+    // the validator (with line numbers counted from the start of the range) and skipped.
+    public ArrayList<Treasure> parseRange(FileChannel channel, long start, long end, Validator validator) throws IOException {
+
+        ArrayList<Treasure> treasures = new ArrayList<>();
+        if (end <= start) {
+            return treasures;
+        }
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        int limit = buffer.limit();
+
+        // Start and end offsets of the five fields of the current line
+        int[] field_starts = new int[5];
+        int[] field_ends = new int[5];
+
+        // A scratch array that field bytes are copied into before being decoded
+        byte[] scratch = new byte[256];
+
+        int line_start = 0;
+        lines:
+        while (line_start < limit) {
+
+            long line = validator.nextLine();
+
+            // Find the end of the line (or the end of the range if the last line has no newline)
+            int line_end = line_start;
+            while (line_end < limit && buffer.get(line_end) != NEWLINE) {
+                line_end++;
+            }
+            int next_line = line_end + 1;
+
+            // Treat \r\n the same as \n, like BufferedReader.readLine() does
+            if (line_end > line_start && buffer.get(line_end - 1) == CARRIAGE_RETURN) {
+                line_end--;
+            }
+
+            // Find where each field starts and ends, stopping after the fifth field
+            int fields = 0;
+            boolean extra_fields = false;
+            int field_start = line_start;
+            for (int i = line_start; i <= line_end; i++) {
+                if (i == line_end || buffer.get(i) == TAB) {
+                    field_starts[fields] = field_start;
+                    field_ends[fields] = i;
+                    fields++;
+                    field_start = i + 1;
+
+                    if (fields == 5) {
+                        // Anything other than more tabs after the fifth field is extra data
+                        for (int j = i; j < line_end; j++) {
+                            if (buffer.get(j) != TAB) {
+                                extra_fields = true;
+                                break;
+                            }
+                        }
+                        break;
+                    }
+                }
+            }
+
+            if (extra_fields) {
+                // If there are more than five fields, we can still make use of the data, but atleast let the user know something is wrong
+                validator.warning(line, "Extra data fields (ignored)");
+            } else if (fields < 5) {
+                // If there are less than five fields, the row is corrupted and can't be used
+                validator.error(line, "Missing data fields");
+                line_start = next_line;
+                continue;
+            }
+
+            // If any of the fields is empty, the row is corrupted and can't be used
+            for (int i = 0; i < 5; i++) {
+                if (field_starts[i] == field_ends[i]) {
+                    validator.error(line, "One or more fields are empty");
+                    line_start = next_line;
+                    continue lines;
+                }
+            }
+
+            // Only now that the line is known to be good do we make Strings out of the fields
+            String catalogue_number = decode(buffer, field_starts[0], field_ends[0], scratch);
+            String name = decode(buffer, field_starts[1], field_ends[1], scratch);
+            String image_path = decode(buffer, field_starts[2], field_ends[2], scratch);
+            String category = decode(buffer, field_starts[3], field_ends[3], scratch);
+            String country = decode(buffer, field_starts[4], field_ends[4], scratch);
+
+            treasures.add(new Treasure(name, catalogue_number, category, image_path, country));
+
+            line_start = next_line;
+
+        }
+
+        return treasures;
+
+    }
+
+    // Make a String out of the UTF-8 bytes between start and end in the buffer
+    private static String decode(MappedByteBuffer buffer, int start, int end, byte[] scratch) {
+
+        int length = end - start;
+        if (length > scratch.length) {
+            scratch = new byte[length];
+        }
+
+        buffer.get(start, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+
+    }
+
+}
@@ -0,0 +1,257 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// An index of words by their trigrams (every run of three characters, with the word padded at both ends so that its first and last
+// characters are in as many trigrams as the rest), for finding the words closest to a (possibly misspelt) one without working out how far
+// it is from every word.
+//
+// Distance is the edit (Levenshtein) distance: how many characters have to be inserted, deleted or changed to turn one word into the
+// other. One edit can only break the three trigrams that overlap it, so a word within distance d of a query with t different trigrams has
+// to share at least t - 3d of them, and so has to be in at least one of the posting lists of the query's 3d + 1 rarest trigrams. A search
+// only works out the distance to the words in those lists, and only as far as d (see distance), which is much less work than all of it.
+//
+// Removing a word just marks it as dead, and searches skip it. Once half the words are dead the index is rebuilt from the live ones.
+class TrigramIndex {
+
+    // Put before and after every word, so "box" has the trigrams "##b", "#bo", "box", "ox#" and "x##" (with # for the padding)
+    private static final char PADDING = '\0';
+
+    record Match(String word, int distance) {
+    }
+
+    // Words by number, and whether each one is dead
+    private ArrayList<String> words = new ArrayList<>();
+    private BitSet dead_words = new BitSet();
+    private int dead = 0;
+
+    private HashMap<String, Integer> word_numbers = new HashMap<>();
+
+    // The numbers of the words with each trigram (packed into a long, see trigrams), in increasing order
+    private HashMap<Long, Postings> postings = new HashMap<>();
+
+    private static final class Postings {
+
+        int[] words = new int[2];
+        int size = 0;
+
+        void add(int word) {
+            if (size == words.length) {
+                words = Arrays.copyOf(words, size * 2);
+            }
+            words[size++] = word;
+        }
+
+    }
+
+    public void add(String word) {
+
+        Integer number = word_numbers.get(word);
+        if (number != null) {
+            // It was there already, but may have been removed
+            if (dead_words.get(number)) {
+                dead_words.clear(number);
+                dead--;
+            }
+            return;
+        }
+
+        number = words.size();
+        words.add(word);
+        word_numbers.put(word, number);
+
+        for (long trigram : trigrams(word)) {
+            postings.computeIfAbsent(trigram, k -> new Postings()).add(number);
+        }
+
+    }
+
+    public void remove(String word) {
+
+        Integer number = word_numbers.get(word);
+        if ((number == null) || dead_words.get(number)) {
+            return;
+        }
+
+        dead_words.set(number);
+        dead++;
+
+        if (dead > words.size() / 2) {
+            rebuild();
+        }
+
+    }
+
+    private void rebuild() {
+
+        ArrayList<String> live = new ArrayList<>(words.size() - dead);
+        for (int i = 0; i < words.size(); i++) {
+            if (!dead_words.get(i)) {
+                live.add(words.get(i));
+            }
+        }
+
+        words = new ArrayList<>(live.size());
+        dead_words = new BitSet();
+        word_numbers = new HashMap<>();
+        postings = new HashMap<>();
+        dead = 0;
+
+        for (String word : live) {
+            add(word);
+        }
+
+    }
+
+    // Returns the (at most) limit live words closest to the given word, and no further from it than max_distance, closest first (and in
+    // alphabetical order for words the same distance away)
+    public List<Match> closest(String word, int limit, int max_distance) {
+
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        // The posting list of each of the query's trigrams, rarest first. Trigrams that no word has get an empty list.
+        ArrayList<Postings> lists = new ArrayList<>();
+        for (long trigram : trigrams(word)) {
+            lists.add(postings.getOrDefault(trigram, new Postings()));
+        }
+        lists.sort(Comparator.comparingInt(list -> list.size));
+
+        // Keep the closest limit matches so far, with the furthest of them on top so it can be dropped when a closer one comes along
+        Comparator<Match> closer_first = Comparator.comparingInt(Match::distance).thenComparing(Match::word);
+        PriorityQueue<Match> best = new PriorityQueue<>(closer_first.reversed());
+        int radius = max_distance;
+
+        // A word within the radius has to share at least lists.size() - 3 * radius of the query's trigrams. A very short query (e.g. "a",
+        // which is one edit away from "b") can be close to words that don't share any though, so then there's nothing for it but to look at
+        // every word.
+        if (lists.size() <= 3 * radius) {
+            for (int candidate = 0; candidate < words.size(); candidate++) {
+                radius = check(word, candidate, radius, best, limit);
+            }
+            return sorted(best, closer_first);
+        }
+
+        // Otherwise a word that close must be in at least one of the rarest 3 * radius + 1 lists, so only the words in those need to be
+        // looked at, and the common trigrams (which are in nearly every word) never are. Once there are limit matches, nothing further away
+        // than the furthest of them is wanted, so the radius shrinks, and with it how many lists there are left to look at.
+        BitSet seen = new BitSet(words.size());
+        for (int l = 0; l < 3 * radius + 1; l++) {
+            Postings list = lists.get(l);
+            for (int i = 0; i < list.size; i++) {
+                int candidate = list.words[i];
+                if (!seen.get(candidate)) {
+                    seen.set(candidate);
+                    radius = check(word, candidate, radius, best, limit);
+                }
+            }
+        }
+
+        return sorted(best, closer_first);
+
+    }
+
+    // Add the given word to the best matches if it is live and within the radius of the query, and return the radius to search from now on
+    private int check(String word, int candidate, int radius, PriorityQueue<Match> best, int limit) {
+
+        String other = words.get(candidate);
+        if (dead_words.get(candidate) || (Math.abs(other.length() - word.length()) > radius)) {
+            return radius;
+        }
+
+        int distance = distance(word, other, radius);
+        if (distance > radius) {
+            return radius;
+        }
+
+        Match match = new Match(other, distance);
+        if (best.size() < limit) {
+            best.add(match);
+        } else if (best.comparator().compare(match, best.peek()) > 0) {
+            best.poll();
+            best.add(match);
+        }
+
+        return (best.size() < limit) ? radius : best.peek().distance();
+
+    }
+
+    private static List<Match> sorted(PriorityQueue<Match> best, Comparator<Match> closer_first) {
+
+        ArrayList<Match> matches = new ArrayList<>(best);
+        matches.sort(closer_first);
+        return matches;
+
+    }
+
+    // The different trigrams in a word, each packed into a long as three 16 bit characters
+    private static HashSet<Long> trigrams(String word) {
+
+        String padded = "" + PADDING + PADDING + word + PADDING + PADDING;
+        HashSet<Long> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2));
+        }
+        return trigrams;
+
+    }
+
+    // The Levenshtein distance between two words, keeping only two rows of the usual table. Gives up as soon as the distance is sure to be
+    // more than limit, and returns limit + 1.
+    //
+    // A path through the table that strays more than limit cells from the diagonal already costs more than limit, so only the cells within
+    // limit of the diagonal are worked out, and the others are treated as infinite.
+    static int distance(String a, String b, int limit) {
+
+        if (Math.abs(a.length() - b.length()) > limit) {
+            return limit + 1;
+        }
+
+        int infinite = limit + 1;
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = Math.min(j, infinite);
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+
+            int from = Math.max(1, i - limit);
+            int to = Math.min(b.length(), i + limit);
+
+            current[0] = Math.min(i, infinite);
+            if (from > 1) {
+                current[from - 1] = infinite;
+            }
+
+            int row_minimum = current[0];
+            char c = a.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int change = previous[j - 1] + ((c == b.charAt(j - 1)) ? 0 : 1);
+                int insert_or_delete = Math.min((j == i + limit) ? infinite : previous[j], current[j - 1]) + 1;
+                current[j] = Math.min(infinite, Math.min(change, insert_or_delete));
+                row_minimum = Math.min(row_minimum, current[j]);
+            }
+
+            // Every later row is at least as big as the smallest number in this one
+            if (row_minimum > limit) {
+                return infinite;
+            }
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+
+        }
+
+        return previous[b.length()];
+
+    }
+
+}
@@ -1,6 +1,14 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 
 import javax.swing.*;
 import javax.swing.event.*;
@@ -30,12 +38,20 @@ class LabelledText extends JPanel {
     public void setText(String text) {
         this.text.setText(text);
     }
+
+    // Be told about every change to the text, as it is typed
+    public void addDocumentListener(DocumentListener listener) {
+        text.getDocument().addDocumentListener(listener);
+    }
 }
 
 class DrawingPanel extends JPanel {
 
     private Image current_image;
 
+    // Text shown in place of the image when there isn't one (e.g. while it is still loading)
+    private String placeholder;
+
     public DrawingPanel() {
 
         setPreferredSize(new Dimension(400, 400));
@@ -44,6 +60,13 @@ class DrawingPanel extends JPanel {
 
     public void setImage(Image image) {
         this.current_image = image;
+        this.placeholder = null;
+        repaint();
+    }
+
+    public void setPlaceholder(String placeholder) {
+        this.current_image = null;
+        this.placeholder = placeholder;
         repaint();
     }
 
@@ -58,10 +81,281 @@ class DrawingPanel extends JPanel {
             int xOffset = (getWidth() - current_image.getWidth(this)) / 2;
             int yOffset = (getHeight() - current_image.getHeight(this)) / 2;
             g.drawImage(current_image, xOffset, yOffset, this);
+        } else if (placeholder != null) {
+            FontMetrics metrics = g.getFontMetrics();
+            int xOffset = (getWidth() - metrics.stringWidth(placeholder)) / 2;
+            int yOffset = (getHeight() + metrics.getAscent()) / 2;
+            g.drawString(placeholder, xOffset, yOffset);
+        }
+
+    }
+
+}
+
+// The list model for the catalogue. DefaultListModel fires an event for every element added or removed, which makes reloading a large
+// catalogue very slow, so this just holds the entries in a list and fires a single event whenever they are all replaced.
+//
+// The entries are kept sorted (see ORDER) so that a single treasure can be found, added or removed with a binary search, and only that
+// one row of the list needs to be updated.
+//
+// The list can also show search results instead, in the order they were ranked. Then the entries aren't sorted, so finding one means
+// looking through them all (there are only as many as the search returned), and new treasures aren't added since they weren't found by
+// the search. A result that is removed and then put back (e.g. the two halves of undoing an edit, or undoing a delete) goes back in its
+// old place though.
+class TreasureListModel extends AbstractListModel<Treasure> {
+
+    // Sort by catalogue number (as a number, the same order DataStore.filter returns them in), then by the other fields so that treasures
+    // which are not equal never compare as equal
+    public static final Comparator<Treasure> ORDER = NumberIndex.ORDER
+            .thenComparing(Treasure::name)
+            .thenComparing(Treasure::image_path)
+            .thenComparing(Treasure::category)
+            .thenComparing(Treasure::country);
+
+    private ArrayList<Treasure> entries = new ArrayList<>();
+
+    // Whether the entries are search results in ranked order, rather than sorted
+    private boolean ranked = false;
+
+    // Where each search result that has been removed was, by catalogue number, so that it (or an edited version of it) can be put back
+    private HashMap<String, Integer> removed_results = new HashMap<>();
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    public Treasure getElementAt(int index) {
+        return entries.get(index);
+    }
+
+    // Replace all the entries with the given ones, which must already be in ORDER (as DataStore.filter returns them), so that reloading the
+    // list never has to sort the whole catalogue
+    public void setEntries(Collection<Treasure> treasures) {
+
+        int old_size = entries.size();
+        entries = new ArrayList<>(treasures);
+        ranked = false;
+        removed_results.clear();
+        fireChangedFrom(0, old_size);
+
+    }
+
+    // Replace all the entries with search results, keeping them in the order given
+    public void setResults(List<Treasure> results) {
+
+        int old_size = entries.size();
+        entries = new ArrayList<>(results);
+        ranked = true;
+        removed_results.clear();
+        fireChangedFrom(0, old_size);
+
+    }
+
+    public boolean showingResults() {
+        return ranked;
+    }
+
+    // Add more search results after the ones already shown, e.g. as they come in from a search still running
+    public void appendResults(List<Treasure> results) {
+
+        if (!ranked || results.isEmpty()) {
+            return;
+        }
+
+        int index = entries.size();
+        entries.addAll(results);
+        fireIntervalAdded(this, index, entries.size() - 1);
+
+    }
+
+    // Swap a treasure for an edited version of it. Search results keep their place in the ranking.
+    public void replace(Treasure old, Treasure edited) {
+
+        if (!ranked) {
+            remove(old);
+            insert(edited);
+            return;
+        }
+
+        int index = indexOf(old);
+        if (index != -1) {
+            entries.set(index, edited);
+            fireContentsChanged(this, index, index);
+        }
+
+    }
+
+    // Add a single treasure in its place in the list
+    public void insert(Treasure treasure) {
+
+        if (ranked) {
+            insertResult(treasure);
+            return;
+        }
+
+        int index = Collections.binarySearch(entries, treasure, ORDER);
+        if (index >= 0) {
+            return; // It's already there
+        }
+
+        index = -(index + 1);
+        entries.add(index, treasure);
+        fireIntervalAdded(this, index, index);
+
+    }
+
+    // Remove a single treasure from the list
+    public void remove(Treasure treasure) {
+
+        int index = indexOf(treasure);
+        if (index == -1) {
+            return;
+        }
+
+        entries.remove(index);
+        if (ranked) {
+            removed_results.put(treasure.catalogue_number(), index);
+        }
+        fireIntervalRemoved(this, index, index);
+
+    }
+
+    // Put a treasure back among the search results where the one with its catalogue number was removed from, if one was. Anything else
+    // wasn't found by the search, so it isn't added.
+    private void insertResult(Treasure treasure) {
+
+        Integer index = removed_results.remove(treasure.catalogue_number());
+        if ((index == null) || (indexOf(treasure) != -1)) {
+            return;
+        }
+
+        index = Math.min(index, entries.size());
+        entries.add(index, treasure);
+        fireIntervalAdded(this, index, index);
+
+    }
+
+    // Add several treasures in their places in the list at once, merging them in with a single pass over the list rather than moving the
+    // rest of the list along for each of them
+    public void insertAll(Collection<Treasure> treasures) {
+
+        if (ranked) {
+            // Put them back in the order of where they were, so that each goes back to the same place as long as they were all removed
+            // together
+            ArrayList<Treasure> putting_back = new ArrayList<>();
+            for (Treasure treasure : treasures) {
+                if (removed_results.containsKey(treasure.catalogue_number())) {
+                    putting_back.add(treasure);
+                }
+            }
+            putting_back.sort(Comparator.comparingInt(treasure -> removed_results.get(treasure.catalogue_number())));
+            for (Treasure treasure : putting_back) {
+                insertResult(treasure);
+            }
+            return;
+        }
+
+        if (treasures.size() == 1) {
+            insert(treasures.iterator().next());
+            return;
+        }
+
+        ArrayList<Treasure> adding = new ArrayList<>(treasures);
+        adding.sort(ORDER);
+
+        int old_size = entries.size();
+        ArrayList<Treasure> merged = new ArrayList<>(old_size + adding.size());
+        int first_changed = -1;
+
+        int i = 0;
+        for (Treasure treasure : adding) {
+
+            while ((i < old_size) && (ORDER.compare(entries.get(i), treasure) < 0)) {
+                merged.add(entries.get(i++));
+            }
+
+            // Skip it if it's already there
+            if ((i < old_size) && (ORDER.compare(entries.get(i), treasure) == 0)) {
+                continue;
+            }
+
+            if (first_changed == -1) {
+                first_changed = merged.size();
+            }
+            merged.add(treasure);
+
+        }
+        merged.addAll(entries.subList(i, old_size));
+
+        entries = merged;
+        if (first_changed != -1) {
+            fireChangedFrom(first_changed, old_size);
+        }
+
+    }
+
+    // Remove several treasures from the list at once, in a single pass over the list
+    public void removeAll(Collection<Treasure> treasures) {
+
+        if (treasures.size() == 1) {
+            remove(treasures.iterator().next());
+            return;
+        }
+
+        HashSet<Treasure> removing = new HashSet<>(treasures);
+
+        int old_size = entries.size();
+        int first_changed = -1;
+        for (int i = 0; i < old_size; i++) {
+            if (removing.contains(entries.get(i))) {
+                if (first_changed == -1) {
+                    first_changed = i;
+                }
+                if (ranked) {
+                    removed_results.put(entries.get(i).catalogue_number(), i);
+                }
+            }
+        }
+
+        if (first_changed == -1) {
+            return;
+        }
+
+        entries.removeIf(removing::contains);
+        fireChangedFrom(first_changed, old_size);
+
+    }
+
+    // Tell the listeners that the entries from the given index on have changed, when there used to be old_size of them. The rows past the
+    // end of the shorter of the old and new lists are reported as removed or added rather than changed, so that the JList adjusts its
+    // selection for them, and no event ever refers to a row that isn't there.
+    private void fireChangedFrom(int from, int old_size) {
+
+        int new_size = entries.size();
+        if (new_size < old_size) {
+            fireIntervalRemoved(this, new_size, old_size - 1);
+        } else if (new_size > old_size) {
+            fireIntervalAdded(this, old_size, new_size - 1);
+        }
+
+        int common = Math.min(old_size, new_size);
+        if (from < common) {
+            fireContentsChanged(this, from, common - 1);
         }
 
     }
 
+    // Returns the index of the given treasure, or -1 if it isn't in the list
+    public int indexOf(Treasure treasure) {
+
+        if (ranked) {
+            return entries.indexOf(treasure);
+        }
+
+        return Math.max(Collections.binarySearch(entries, treasure, ORDER), -1);
+
+    }
+
 }
 
 public class UI extends JFrame {
@@ -69,7 +363,7 @@ public class UI extends JFrame {
     Container container = getContentPane();
 
     // This stores the list of treasures
-    private DefaultListModel<Treasure> list_model = new DefaultListModel<>();
+    private TreasureListModel list_model = new TreasureListModel();
 
     // This is the main display panel consisting of an DrawingPanel and LabelledText fields for the info for the currently selected entry
     // The display panel occupies the right half of the screen
@@ -88,7 +382,8 @@ public class UI extends JFrame {
     public JButton print = new JButton("Print Entry");
     public JButton update = new JButton("Update Entry");
     public JButton delete = new JButton("Delete Entry");
-    public JButton undo = new JButton("Undo Deletion");
+    public JButton undo = new JButton("Undo");
+    public JButton redo = new JButton("Redo");
 
     // This occupies the left half of the GUI and provides tabs to switch between the list of treasures, a search panel, and a new treasure panel
     private JTabbedPane tabbed_pane = new JTabbedPane();
@@ -112,11 +407,24 @@ public class UI extends JFrame {
     private LabelledText new_country = new LabelledText("Country:", 10);
     public JButton create_button = new JButton("Create New Entry");
 
-    // This allows searching by name or catalogue number
+    // This allows searching by name (exactly, or allowing for typos), catalogue number (or a range of them), or any words in any field
     private JPanel search_tab = new JPanel();
     private LabelledText query = new LabelledText("Query:", 20);
     public JButton name_search_button = new JButton("Search By Name");
     public JButton number_search_button = new JButton("Search By Catalogue No.");
+    public JButton text_search_button = new JButton("Full Text Search");
+    public JButton fuzzy_search_button = new JButton("Fuzzy Search");
+
+    // How many treasures the query matches so far, while searching as the user types
+    private JLabel live_results = new JLabel();
+
+    // Images are scaled down to fit the drawing panel, with the thumbnails kept on disk in .thumbnails. They are loaded in the background and
+    // the most recent ones kept in memory, up to 16MB of them.
+    public ImageCache images = new ImageCache(new Thumbnails(".thumbnails", 400), 16L * 1024 * 1024, 2);
+
+    // The image path of the treasure in the main display panel, so that an image that finishes loading after the user has moved on to
+    // another treasure isn't shown
+    private String displayed_image_path;
 
     private ActionListener action_listener;
     private ListSelectionListener list_selection_listener;
@@ -146,25 +454,31 @@ public class UI extends JFrame {
         display.add(country);
         display.add(control_buttons);
 
-        // Buttons for saving changes, printing, updating changes, deleting entries, and undoing deletions
+        // Buttons for saving changes, printing, updating changes, deleting entries, and undoing and redoing changes
         control_buttons.add(save);
         control_buttons.add(print);
         control_buttons.add(update);
         control_buttons.add(delete);
         control_buttons.add(undo);
+        control_buttons.add(redo);
 
         save.addActionListener(action_listener);
         print.addActionListener(action_listener);
         update.addActionListener(action_listener);
         delete.addActionListener(action_listener);
         undo.addActionListener(action_listener);
+        redo.addActionListener(action_listener);
         // END MAIN DISPLAY
         // ----------------------------------------------------------------
         // CATALOGUE TAB - Shows a list of entries and a drop down box to filter by category
         tabbed_pane.add("Catalogue", catalogue_tab);
 
+        // Give every row the same size so that the list doesn't have to measure every entry, only the ones it actually shows
         list.addListSelectionListener(list_selection_listener);
-        catalogue_tab.add(list);
+        list.setFixedCellHeight(list.getFontMetrics(list.getFont()).getHeight() + 4);
+        list.setFixedCellWidth(300);
+        list.setVisibleRowCount(25);
+        catalogue_tab.add(new JScrollPane(list));
         catalogue_tab.add(filters);
 
         filters.setLayout(new BoxLayout(filters, BoxLayout.Y_AXIS));
@@ -189,8 +503,17 @@ public class UI extends JFrame {
         name_search_button.addActionListener(action_listener);
         search_tab.add(name_search_button);
 
+        number_search_button.setToolTipText("A catalogue number, or a range of them such as 1000-5000");
         number_search_button.addActionListener(action_listener);
         search_tab.add(number_search_button);
+
+        text_search_button.addActionListener(action_listener);
+        search_tab.add(text_search_button);
+
+        fuzzy_search_button.addActionListener(action_listener);
+        search_tab.add(fuzzy_search_button);
+
+        search_tab.add(live_results);
         // END SEARCH TAB
         // ----------------------------------------------------------------
         // CREATE TAB - Text fields to add name, category, and image paths of treasure to be added and a button to create treasure
@@ -208,63 +531,136 @@ public class UI extends JFrame {
         // ----------------------------------------------------------------
     }
 
-    // Load all treasures from the given hash set into list_model; takes active filters into account
-    public void loadEntries(HashSet<Treasure> treasures) {
+    // Load all treasures from the given store into list_model; takes active filters into account
+    public void loadEntries(DataStore store) {
 
-        list_model.removeAllElements();
+        // Clear the selection first since the old selection means nothing in the new list
+        list.clearSelection();
 
         String selected_category = (String) category_filter.getSelectedItem();
         String selected_country = (String) country_filter.getSelectedItem();
 
-        if ((selected_category == null) && (selected_country == null)) {
+        // The store keeps an index of treasures by category and by country, so this doesn't need to look at every treasure
+        list_model.setEntries(store.filter(selected_category, selected_country));
 
-            list_model.addAll(treasures);
+    }
 
-        } else if (selected_category == null) {
+    // Show search results in the catalogue list, best first, instead of the catalogue. Changing or clearing the filters goes back to the
+    // catalogue.
+    public void showResults(List<Treasure> results) {
 
-            for (Treasure treasure : treasures) {
-                if (treasure.country().compareTo(selected_country) == 0) {
-                    list_model.addElement(treasure);
-                }
-            }
+        list.clearSelection();
+        list_model.setResults(results);
+        tabbed_pane.setSelectedComponent(catalogue_tab);
+        list.ensureIndexIsVisible(0);
 
-        } else if (selected_country == null) {
+    }
 
-            for (Treasure treasure : treasures) {
-                if (treasure.category().compareTo(selected_category) == 0) {
-                    list_model.addElement(treasure);
-                }
-            }
+    // Show a batch of results from searching as the user types (see LiveSearch). The first batch of a search replaces whatever the list was
+    // showing, and the rest are added after it. Unlike showResults, this leaves the search tab open, since the user is still typing there.
+    public void showLiveResults(List<Treasure> batch, boolean first, boolean done) {
 
+        if (first) {
+            list.clearSelection();
+            list_model.setResults(batch);
         } else {
+            list_model.appendResults(batch);
+        }
 
-            for (Treasure treasure : treasures) {
-                if ((treasure.category().compareTo(selected_category) == 0) && (treasure.country().compareTo(selected_country) == 0)) {
-                    list_model.addElement(treasure);
-                }
-            }
+        int found = list_model.getSize();
+        live_results.setText(found + ((found == 1) ? " match" : " matches") + (done ? "" : " so far..."));
 
+    }
+
+    // Say what a search that is still running is doing, below the search box
+    public void showSearchStatus(String status) {
+
+        live_results.setText(status);
+
+    }
+
+    // Forget the count of live search results, e.g. once the query has been cleared
+    public void clearLiveResults() {
+
+        live_results.setText("");
+
+    }
+
+    public boolean showingResults() {
+
+        return list_model.showingResults();
+
+    }
+
+    // Add a single new treasure to the list, if it isn't hidden by the filters
+    public void entryAdded(Treasure t) {
+
+        if (matchesFilters(t)) {
+            list_model.insert(t);
         }
 
     }
 
-    // Find all unique categories and countries from the given hash set and add them into category_filter_model and country_filter_model
-    public void loadFilters(HashSet<Treasure> treasures) {
+    // Remove a single treasure from the list
+    public void entryRemoved(Treasure t) {
 
-        category_filter_model.removeAllElements();
-        country_filter_model.removeAllElements();
+        list_model.remove(t);
 
-        // Use a set for the filters so duplicates get ignored automatically
-        HashSet<String> filter_set = new HashSet<>();
-        HashSet<String> country_set = new HashSet<>();
+    }
 
-        for (Treasure treasure : treasures) {
-            filter_set.add(treasure.category());
-            country_set.add(treasure.country());
+    // Add several new treasures to the list at once, leaving out any hidden by the filters
+    public void entriesAdded(Collection<Treasure> treasures) {
+
+        ArrayList<Treasure> shown = new ArrayList<>(treasures.size());
+        for (Treasure t : treasures) {
+            // Search results aren't filtered
+            if (list_model.showingResults() || matchesFilters(t)) {
+                shown.add(t);
+            }
+        }
+        list_model.insertAll(shown);
+
+    }
+
+    // Remove several treasures from the list at once
+    public void entriesRemoved(Collection<Treasure> treasures) {
+
+        list_model.removeAll(treasures);
+
+    }
+
+    // Swap a single treasure in the list for an edited version of it
+    public void entryReplaced(Treasure old, Treasure edited) {
+
+        // Search results aren't filtered
+        if (list_model.showingResults() || matchesFilters(edited)) {
+            list_model.replace(old, edited);
+        } else {
+            list_model.remove(old);
         }
 
-        category_filter_model.addAll(filter_set);
-        country_filter_model.addAll(country_set);
+    }
+
+    // Whether the given treasure would be shown with the filters that are currently selected
+    private boolean matchesFilters(Treasure t) {
+
+        String selected_category = (String) category_filter.getSelectedItem();
+        String selected_country = (String) country_filter.getSelectedItem();
+
+        // Categories and countries are interned (see Treasure) so they can be compared by identity
+        return ((selected_category == null) || (t.category() == selected_category))
+                && ((selected_country == null) || (t.country() == selected_country));
+
+    }
+
+    // Add all the categories and countries in the given store into category_filter_model and country_filter_model
+    public void loadFilters(DataStore store) {
+
+        category_filter_model.removeAllElements();
+        country_filter_model.removeAllElements();
+
+        category_filter_model.addAll(store.categories());
+        country_filter_model.addAll(store.countries());
 
     }
 
@@ -278,8 +674,42 @@ public class UI extends JFrame {
     // Make the main display panel "focus on" (i.e., change the name, category, image, etc to) the given treasure
     public void focus(Treasure t) {
 
-        list.setSelectedValue(t, true);
-        drawing_panel.setImage(getToolkit().getImage(t.image_path()));
+        // setSelectedValue would compare t with every entry in turn, so find it with the list model's (binary) search instead
+        int index = list_model.indexOf(t);
+        if (index != -1) {
+            list.setSelectedIndex(index);
+            list.ensureIndexIsVisible(index);
+        }
+        display(t);
+
+    }
+
+    // Select all of the given treasures that are in the list, and focus on the first of them
+    public void focus(List<Treasure> treasures) {
+
+        int[] indices = new int[treasures.size()];
+        int count = 0;
+
+        for (Treasure treasure : treasures) {
+            int index = list_model.indexOf(treasure);
+            // Treasures hidden by the current filters aren't in the list so can't be selected
+            if (index != -1) {
+                indices[count++] = index;
+            }
+        }
+
+        list.setSelectedIndices(Arrays.copyOf(indices, count));
+        if (count > 0) {
+            list.ensureIndexIsVisible(indices[0]);
+        }
+        display(treasures.get(0));
+
+    }
+
+    // Show the given treasure in the main display panel without changing the selection
+    public void display(Treasure t) {
+
+        showImage(t.image_path());
         name.setText(t.name());
         number.setText(t.catalogue_number());
         category.setText(t.category());
@@ -288,10 +718,46 @@ public class UI extends JFrame {
 
     }
 
+    // Show the image at the given path in the drawing panel, loading it in the background if needed
+    private void showImage(String path) {
+
+        displayed_image_path = path;
+
+        BufferedImage image = images.getIfPresent(path);
+        if (image != null) {
+            drawing_panel.setImage(image);
+        } else {
+            drawing_panel.setPlaceholder("Loading...");
+            images.request(path, loaded -> {
+                // Only show it if we are still displaying the same treasure
+                if (path.equals(displayed_image_path)) {
+                    if (loaded == null) {
+                        drawing_panel.setPlaceholder("No image");
+                    } else {
+                        drawing_panel.setImage(loaded);
+                    }
+                }
+            });
+        }
+
+        // The user is likely to move up or down the list next, so get the neighbouring images ready
+        int index = list.getSelectedIndex();
+        if (index != -1) {
+            if (index > 0) {
+                images.prefetch(list_model.getElementAt(index - 1).image_path());
+            }
+            if (index < list_model.getSize() - 1) {
+                images.prefetch(list_model.getElementAt(index + 1).image_path());
+            }
+        }
+
+    }
+
     // Focus on nothing
     public void focus() {
 
         list.setSelectedValue(null, false);
+        displayed_image_path = null;
         drawing_panel.setImage(null);
         name.setText("");
         number.setText("");
@@ -307,6 +773,13 @@ public class UI extends JFrame {
 
     }
 
+    // Be told whenever the search query is changed, e.g. to search as the user types
+    public void addSearchQueryListener(DocumentListener listener) {
+
+        query.addDocumentListener(listener);
+
+    }
+
     // Get a new treasure made from the values currently in the description boxes
     public Treasure getEditedTreasure() {
 
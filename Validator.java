@@ -0,0 +1,139 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+// Collects the problems the parser finds in the data file as it goes, with the line number of each, so that a file with bad rows in it can
+// be reported on all at once instead of stopping at the first one. Only the first few problems are kept (there's no point printing a
+// million of them), but all of them are counted.
+//
+// There are two kinds of problem -
+//      errors      the row can't be used (missing or empty fields), and is skipped
+//      warnings    the row can be used but something is wrong with it (extra fields, which are ignored)
+//
+// What happens to a file with errors in it depends on the mode: a STRICT load refuses to use the file at all, while a LENIENT load uses
+// all the good rows and just reports the bad ones.
+//
+// When the file is parsed in chunks, each chunk has its own Validator (with line numbers counted from the start of the chunk), and they
+// are merged together in file order at the end.
+class Validator {
+
+    enum Mode { STRICT, LENIENT }
+
+    record Problem(long line, String message, boolean error) {
+    }
+
+    // How many problems to keep by default
+    public static final int MAX_PROBLEMS = 100;
+
+    private int max_problems;
+    private ArrayList<Problem> problems = new ArrayList<>();
+    private long errors = 0;
+    private long warnings = 0;
+
+    // How many lines this has seen, so that the problems of a later chunk can be renumbered when it is merged into this one
+    private long lines = 0;
+
+    public Validator() {
+
+        this(MAX_PROBLEMS);
+
+    }
+
+    public Validator(int max_problems) {
+
+        this.max_problems = max_problems;
+
+    }
+
+    // Make an empty validator for one chunk of the file, keeping the same number of problems as this one
+    public Validator forChunk() {
+
+        return new Validator(max_problems);
+
+    }
+
+    // Called by the parser at the start of every line. Returns the number of the line, counting from 1.
+    public long nextLine() {
+
+        return ++lines;
+
+    }
+
+    public void error(long line, String message) {
+
+        errors++;
+        keep(new Problem(line, message, true));
+
+    }
+
+    public void warning(long line, String message) {
+
+        warnings++;
+        keep(new Problem(line, message, false));
+
+    }
+
+    private void keep(Problem problem) {
+
+        if (problems.size() < max_problems) {
+            problems.add(problem);
+        }
+
+    }
+
+    // Add the problems from the chunk of the file that comes straight after the chunk(s) this one has seen
+    public void merge(Validator next) {
+
+        for (Problem problem : next.problems) {
+            keep(new Problem(problem.line() + lines, problem.message(), problem.error()));
+        }
+
+        errors += next.errors;
+        warnings += next.warnings;
+        lines += next.lines;
+
+    }
+
+    public boolean hasErrors() {
+
+        return errors > 0;
+
+    }
+
+    public boolean hasProblems() {
+
+        return errors + warnings > 0;
+
+    }
+
+    public long errors() {
+
+        return errors;
+
+    }
+
+    // Print out the problems that were found, e.g.
+    //      Corrupted data in treasures.txt: 2 errors, 1 warning
+    //          line 4: ERROR: Missing data fields
+    //          line 9: WARNING: Extra data fields (ignored)
+    //          line 12: ERROR: One or more fields are empty
+    public void report(String filename, PrintStream output) {
+
+        output.println("Corrupted data in " + filename + ": " + plural(errors, "error") + ", " + plural(warnings, "warning"));
+
+        for (Problem problem : problems) {
+            output.println("    line " + problem.line() + ": " + (problem.error() ? "ERROR: " : "WARNING: ") + problem.message());
+        }
+
+        if (errors + warnings > problems.size()) {
+            output.println("    ... and " + (errors + warnings - problems.size()) + " more");
+        }
+
+    }
+
+    private static String plural(long count, String noun) {
+
+        return count + " " + noun + ((count == 1) ? "" : "s");
+
+    }
+
+}
@@ -0,0 +1,277 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+// The museum's classes are in the default package, which can't be imported from a named package (and JMH won't run benchmarks that are
+// in the default package), so the benchmarks reach them through method handles instead. The handles are static final so the JIT can
+// inline straight through them, and the cost of calling through them is a few nanoseconds at most. (This is App rather than Museum so that
+// it can't be mistaken for the application's own Museum class, e.g. in a stack trace.)
+final class App {
+
+    private static final MethodHandle NEW_STORE = constructor("DataStore", String.class, int.class);
+    private static final MethodHandle READ_DATA = method("DataStore", "readData");
+    private static final MethodHandle WRITE_DATA = method("DataStore", "writeData");
+    private static final MethodHandle COMPACT = method("DataStore", "compact");
+    private static final MethodHandle SEARCH_BY_NAME = method("DataStore", "searchByName", String.class);
+    private static final MethodHandle SEARCH_BY_NAME_PREFIX = method("DataStore", "searchByNamePrefix", String.class);
+    private static final MethodHandle SEARCH_BY_NUMBER = method("DataStore", "searchByNumber", String.class);
+    private static final MethodHandle SEARCH_BY_NUMBER_RANGE = method("DataStore", "searchByNumberRange", long.class, long.class);
+    private static final MethodHandle SEARCH_TEXT = method("DataStore", "searchText", String.class, int.class);
+    private static final MethodHandle FILTER = method("DataStore", "filter", String.class, String.class);
+    private static final MethodHandle CATEGORIES = method("DataStore", "categories");
+    private static final MethodHandle COUNTRIES = method("DataStore", "countries");
+    private static final MethodHandle ADD = method("DataStore", "add", "Treasure");
+    private static final MethodHandle REMOVE = method("DataStore", "remove", "Treasure");
+
+    private static final MethodHandle NEW_TREASURE = constructor("Treasure", String.class, String.class, String.class, String.class, String.class);
+    private static final MethodHandle NAME = method("Treasure", "name");
+    private static final MethodHandle CATALOGUE_NUMBER = method("Treasure", "catalogue_number");
+
+    private static final MethodHandle NEW_VALIDATOR = constructor("Validator");
+    private static final MethodHandle READ_COLUMNS = method("ColumnStore", "read", String.class, "Validator");
+    private static final MethodHandle FILTER_COLUMNS = method("ColumnStore", "filter", String.class, String.class);
+
+    private static final MethodHandle NEW_LIST_MODEL = constructor("TreasureListModel");
+    private static final MethodHandle SET_ENTRIES = method("TreasureListModel", "setEntries", Collection.class);
+
+    private static final MethodHandle GENERATE = method("CatalogueGenerator", "generate", String.class, int.class, long.class, double.class);
+
+    private App() {
+    }
+
+    public static Object newStore(String filename, int loader_threads) {
+        try {
+            return NEW_STORE.invokeExact((Object) filename, loader_threads);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    public static void readData(Object store) {
+        try {
+            READ_DATA.invokeExact(store);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    public static void writeData(Object store) {
+        try {
+            WRITE_DATA.invokeExact(store);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    public static void compact(Object store) {
+        try {
+            COMPACT.invokeExact(store);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<Object> searchByName(Object store, String name) {
+        try {
+            return (List<Object>) (Object) SEARCH_BY_NAME.invokeExact(store, (Object) name);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<Object> searchByNamePrefix(Object store, String prefix) {
+        try {
+            return (List<Object>) (Object) SEARCH_BY_NAME_PREFIX.invokeExact(store, (Object) prefix);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    public static Object searchByNumber(Object store, String number) {
+        try {
+            return SEARCH_BY_NUMBER.invokeExact(store, (Object) number);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<Object> searchByNumberRange(Object store, long from, long to) {
+        try {
+            return (List<Object>) (Object) SEARCH_BY_NUMBER_RANGE.invokeExact(store, from, to);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<Object> searchText(Object store, String query, int limit) {
+        try {
+            return (List<Object>) (Object) SEARCH_TEXT.invokeExact(store, (Object) query, limit);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Collection<Object> filter(Object store, String category, String country) {
+        try {
+            return (Collection<Object>) (Object) FILTER.invokeExact(store, (Object) category, (Object) country);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Set<String> categories(Object store) {
+        try {
+            return (Set<String>) (Object) CATEGORIES.invokeExact(store);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Set<String> countries(Object store) {
+        try {
+            return (Set<String>) (Object) COUNTRIES.invokeExact(store);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    public static void add(Object store, Object treasure) {
+        try {
+            ADD.invokeExact(store, treasure);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    public static void remove(Object store, Object treasure) {
+        try {
+            REMOVE.invokeExact(store, treasure);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    public static Object newTreasure(String name, String catalogue_number, String category, String image_path, String country) {
+        try {
+            return NEW_TREASURE.invokeExact((Object) name, (Object) catalogue_number, (Object) category, (Object) image_path, (Object) country);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    public static String name(Object treasure) {
+        try {
+            return (String) (Object) NAME.invokeExact(treasure);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    public static String catalogueNumber(Object treasure) {
+        try {
+            return (String) (Object) CATALOGUE_NUMBER.invokeExact(treasure);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    public static Object readColumns(String filename) {
+        try {
+            return READ_COLUMNS.invokeExact((Object) filename, NEW_VALIDATOR.invokeExact());
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    public static int[] filterColumns(Object column_store, String category, String country) {
+        try {
+            return (int[]) (Object) FILTER_COLUMNS.invokeExact(column_store, (Object) category, (Object) country);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    public static Object newListModel() {
+        try {
+            return NEW_LIST_MODEL.invokeExact();
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    public static void setEntries(Object list_model, Collection<Object> treasures) {
+        try {
+            SET_ENTRIES.invokeExact(list_model, (Object) treasures);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    public static void generate(String filename, int rows, long seed, double skew) {
+        try {
+            GENERATE.invokeExact((Object) filename, rows, seed, skew);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // Find a method and erase all the museum's own types in its signature to Object, so that it can be called with invokeExact from here.
+    // Parameter types are either Classes, or the names of classes in the default package.
+    private static MethodHandle method(String class_name, String name, Object... parameter_types) {
+        try {
+            Method method = Class.forName(class_name).getDeclaredMethod(name, resolve(parameter_types));
+            method.setAccessible(true);
+            return erase(MethodHandles.lookup().unreflect(method));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle constructor(String class_name, Object... parameter_types) {
+        try {
+            Constructor<?> constructor = Class.forName(class_name).getDeclaredConstructor(resolve(parameter_types));
+            constructor.setAccessible(true);
+            return erase(MethodHandles.lookup().unreflectConstructor(constructor));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static Class<?>[] resolve(Object[] parameter_types) throws ClassNotFoundException {
+        Class<?>[] classes = new Class<?>[parameter_types.length];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = (parameter_types[i] instanceof Class) ? (Class<?>) parameter_types[i] : Class.forName((String) parameter_types[i]);
+        }
+        return classes;
+    }
+
+    // Primitives are kept as they are; every reference type becomes Object
+    private static MethodHandle erase(MethodHandle handle) {
+        return handle.asType(handle.type().erase());
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new RuntimeException(e);
+    }
+
+}
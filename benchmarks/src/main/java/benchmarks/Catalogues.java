@@ -0,0 +1,81 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.ToIntFunction;
+
+// Generated catalogues for the benchmarks to work on
+final class Catalogues {
+
+    // Always the same seed, so that every run measures the same data
+    private static final long SEED = 42;
+
+    private static final Path DIRECTORY = Paths.get(System.getProperty("java.io.tmpdir"), "museum-benchmarks");
+
+    private Catalogues() {
+    }
+
+    // Returns a copy of the generated catalogue with the given number of rows and skew, in a directory of its own for the given benchmark
+    // so that the journal and snapshot files one benchmark makes next to it don't affect any other benchmark.
+    //
+    // The skew is how unevenly the treasures are spread over the categories and countries (see CatalogueGenerator --skew). Real catalogues
+    // have a few big categories and a long tail of small ones, which is roughly what 1 gives (a quarter of the treasures in the biggest of
+    // 30 categories, under 1% in the smallest); 0 spreads them evenly, which hides how much filtering on a small posting list saves.
+    public static String copy(int rows, double skew, String benchmark) {
+        try {
+
+            String name = "treasures-" + rows + "-skew-" + skew + ".txt";
+            Path original = DIRECTORY.resolve(name);
+            if (!Files.exists(original)) {
+                Files.createDirectories(DIRECTORY);
+                Path temporary = DIRECTORY.resolve(name + ".tmp");
+                App.generate(temporary.toString(), rows, SEED, skew);
+                Files.move(temporary, original, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            Path directory = DIRECTORY.resolve(benchmark + "-" + rows + "-skew-" + skew);
+            Files.createDirectories(directory);
+            for (String suffix : new String[] { "", ".journal", ".snapshot" }) {
+                Files.deleteIfExists(directory.resolve("treasures.txt" + suffix));
+            }
+
+            Path copy = directory.resolve("treasures.txt");
+            Files.copy(original, copy);
+            return copy.toString();
+
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The category and country with the most treasures in a loaded DataStore, for the benchmarks that filter to use. The sets the store
+    // returns iterate in a different order in every JVM, so just taking the first would filter on something different in every fork.
+    public static String biggestCategory(Object store) {
+        return biggest(App.categories(store), category -> App.filter(store, category, null).size());
+    }
+
+    public static String biggestCountry(Object store) {
+        return biggest(App.countries(store), country -> App.filter(store, null, country).size());
+    }
+
+    // The first in alphabetical order of the values with the highest count
+    private static String biggest(Set<String> values, ToIntFunction<String> count) {
+        String biggest = null;
+        int biggest_count = -1;
+        for (String value : new TreeSet<>(values)) {
+            int value_count = count.applyAsInt(value);
+            if (value_count > biggest_count) {
+                biggest = value;
+                biggest_count = value_count;
+            }
+        }
+        return biggest;
+    }
+
+}
@@ -0,0 +1,69 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// How long ColumnStore takes to read a catalogue and to filter it, to compare with LoadBenchmark and FilterBenchmark (DataStore's). The
+// column store has no indexes, so filtering always looks through the whole category and country columns.
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ColumnStoreBenchmark {
+
+    @Param({ "1000", "100000", "1000000", "10000000" })
+    public int rows;
+
+    // How unevenly the treasures are spread over the categories and countries (see Catalogues.copy)
+    @Param({ "1" })
+    public double skew;
+
+    // Which filters are selected
+    @Param({ "none", "category", "country", "both" })
+    public String filters;
+
+    private String data_file;
+    private Object column_store;
+    private String category;
+    private String country;
+
+    @Setup(Level.Trial)
+    public void load() {
+        data_file = Catalogues.copy(rows, skew, "columns");
+        column_store = App.readColumns(data_file);
+
+        // The column store doesn't list its categories and countries, so pick them from a DataStore on the same catalogue, the same way
+        // FilterBenchmark does
+        Object store = App.newStore(data_file, Runtime.getRuntime().availableProcessors());
+        App.readData(store);
+        category = (filters.equals("category") || filters.equals("both")) ? Catalogues.biggestCategory(store) : null;
+        country = (filters.equals("country") || filters.equals("both")) ? Catalogues.biggestCountry(store) : null;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object read() {
+        return App.readColumns(data_file);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object filter() {
+        return App.filterColumns(column_store, category, country);
+    }
+
+}
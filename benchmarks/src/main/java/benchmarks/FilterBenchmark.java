@@ -0,0 +1,67 @@
+package benchmarks;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// How long changing the filters on the Catalogue tab takes: finding the treasures that match (DataStore.filter) and then loading them into
+// the list model, which is what UI.loadEntries does. The UI itself needs a display, so only its list model is used here.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g", "-Djava.awt.headless=true" })
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FilterBenchmark {
+
+    @Param({ "1000", "100000", "1000000", "10000000" })
+    public int rows;
+
+    // How unevenly the treasures are spread over the categories and countries (see Catalogues.copy)
+    @Param({ "1" })
+    public double skew;
+
+    // Which filters are selected
+    @Param({ "none", "category", "country", "both" })
+    public String filters;
+
+    private Object store;
+    private Object list_model;
+    private String category;
+    private String country;
+
+    @Setup(Level.Trial)
+    public void load() {
+        store = App.newStore(Catalogues.copy(rows, skew, "filter"), Runtime.getRuntime().availableProcessors());
+        App.readData(store);
+        list_model = App.newListModel();
+
+        category = (filters.equals("category") || filters.equals("both")) ? Catalogues.biggestCategory(store) : null;
+        country = (filters.equals("country") || filters.equals("both")) ? Catalogues.biggestCountry(store) : null;
+    }
+
+    @Benchmark
+    public Object filter() {
+        return App.filter(store, category, country);
+    }
+
+    @Benchmark
+    public Object loadEntries() {
+        Collection<Object> entries = App.filter(store, category, country);
+        App.setEntries(list_model, entries);
+        return list_model;
+    }
+
+}
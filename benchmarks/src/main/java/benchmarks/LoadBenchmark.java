@@ -0,0 +1,72 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// How long DataStore.readData takes to load a catalogue, either by parsing the text file or from an up to date snapshot
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LoadBenchmark {
+
+    @Param({ "1000", "100000", "1000000", "10000000" })
+    public int rows;
+
+    // How unevenly the treasures are spread over the categories and countries (see Catalogues.copy)
+    @Param({ "1" })
+    public double skew;
+
+    // How many threads to parse with; 0 means one per core
+    @Param({ "1", "0" })
+    public int threads;
+
+    @Param({ "text", "snapshot" })
+    public String source;
+
+    private String data_file;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        data_file = Catalogues.copy(rows, skew, "load");
+        if (threads == 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    // Loading the text file leaves a snapshot behind, so throw it away before every load that is meant to parse the text, and make sure
+    // there is one before every load that is meant to use it
+    @Setup(Level.Invocation)
+    public void prepare() throws IOException {
+        if (source.equals("text")) {
+            Files.deleteIfExists(Paths.get(data_file + ".snapshot"));
+        } else if (!Files.exists(Paths.get(data_file + ".snapshot"))) {
+            App.readData(App.newStore(data_file, threads));
+        }
+    }
+
+    @Benchmark
+    public Object readData() {
+        Object store = App.newStore(data_file, threads);
+        App.readData(store);
+        return store;
+    }
+
+}
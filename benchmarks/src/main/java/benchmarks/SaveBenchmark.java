@@ -0,0 +1,72 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// How long DataStore.writeData takes to save a number of edits (which includes compacting the journal every so often), and how long
+// compacting takes on its own
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SaveBenchmark {
+
+    @Param({ "1000", "100000", "1000000" })
+    public int rows;
+
+    // How unevenly the treasures are spread over the categories and countries (see Catalogues.copy)
+    @Param({ "1" })
+    public double skew;
+
+    // How many treasures are edited between saves
+    @Param({ "1", "100" })
+    public int edits;
+
+    private Object store;
+    private ArrayList<String> numbers = new ArrayList<>();
+    private Random random = new Random(42);
+    private int edit_count = 0;
+
+    @Setup(Level.Trial)
+    public void load() {
+        store = App.newStore(Catalogues.copy(rows, skew, "save"), 1);
+        App.readData(store);
+        for (Object treasure : App.filter(store, null, null)) {
+            numbers.add(App.catalogueNumber(treasure));
+        }
+    }
+
+    @Benchmark
+    public Object editAndWriteData() {
+        for (int i = 0; i < edits; i++) {
+            Object old = App.searchByNumber(store, numbers.get(random.nextInt(numbers.size())));
+            App.remove(store, old);
+            App.add(store, App.newTreasure("Edited " + edit_count++, App.catalogueNumber(old), "Furniture", "images/lock.jpg", "China"));
+        }
+        App.writeData(store);
+        return store;
+    }
+
+    @Benchmark
+    public Object compact() {
+        App.compact(store);
+        return store;
+    }
+
+}
@@ -0,0 +1,94 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// How long the searches on the Search tab take. Each call searches for the next of a fixed, shuffled list of names or numbers that are
+// in the catalogue, so that the results aren't just one key being looked up over and over. The full text search looks for every word of
+// a name (and is ranked), so it finds all the treasures with those words in any order. The range search finds the treasures numbered from
+// one of the numbers to 1000 after it.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SearchBenchmark {
+
+    private static final int KEYS = 1024;
+
+    @Param({ "1000", "100000", "1000000", "10000000" })
+    public int rows;
+
+    // How unevenly the treasures are spread over the categories and countries (see Catalogues.copy)
+    @Param({ "1" })
+    public double skew;
+
+    private Object store;
+    private String[] names = new String[KEYS];
+    private String[] prefixes = new String[KEYS];
+    private String[] numbers = new String[KEYS];
+    private long[] range_starts = new long[KEYS];
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void load() {
+        store = App.newStore(Catalogues.copy(rows, skew, "search"), Runtime.getRuntime().availableProcessors());
+        App.readData(store);
+
+        ArrayList<Object> treasures = new ArrayList<>(App.filter(store, null, null));
+        Collections.shuffle(treasures, new Random(42));
+        for (int i = 0; i < KEYS; i++) {
+            Object treasure = treasures.get(i % treasures.size());
+            names[i] = App.name(treasure);
+            prefixes[i] = names[i].substring(0, Math.min(4, names[i].length()));
+            numbers[i] = App.catalogueNumber(treasure);
+            range_starts[i] = Long.parseLong(numbers[i]);
+        }
+
+        // The full text index is built by the first full text search, which isn't what is being measured
+        App.searchText(store, names[0], 1);
+    }
+
+    @Benchmark
+    public Object searchByName() {
+        return App.searchByName(store, names[next++ & (KEYS - 1)]);
+    }
+
+    @Benchmark
+    public Object searchByNamePrefix() {
+        return App.searchByNamePrefix(store, prefixes[next++ & (KEYS - 1)]);
+    }
+
+    @Benchmark
+    public Object searchText() {
+        return App.searchText(store, names[next++ & (KEYS - 1)], 1000);
+    }
+
+    @Benchmark
+    public Object searchByNumber() {
+        return App.searchByNumber(store, numbers[next++ & (KEYS - 1)]);
+    }
+
+    @Benchmark
+    public Object searchByNumberRange() {
+        long from = range_starts[next++ & (KEYS - 1)];
+        return App.searchByNumberRange(store, from, from + 1000);
+    }
+
+}